@@ -18,14 +18,21 @@
 package com.generalbytes.batm.server.extensions.extra.bitcoin;
 
 import com.generalbytes.batm.server.extensions.*;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.FailoverWallet;
+import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.AggregatingExchange;
+import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.RoutingExchange;
+import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.XChangeExchange;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.bitfinex.BitfinexExchange;
+import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.bittrex.BittrexExchange;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.itbit.ItBitExchange;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.paymentprocessors.bitcoinpay.BitcoinPayPP;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.paymentprocessors.coinofsale.CoinOfSalePP;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.sources.FixPriceRateSource;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.sources.bity.BityRateSource;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.sources.yahoo.YahooFinanceRateSource;
-import com.generalbytes.batm.server.extensions.extra.bitcoin.wallets.bitcoind.BATMBitcoindRPCWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.PayoutBatchingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.RPCWallet;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.wallets.bitcore.BitcoreWallet;
 import com.generalbytes.batm.server.extensions.watchlist.IWatchList;
 
@@ -60,6 +67,31 @@ public class BitcoinExtension implements IExtension{
                     preferredFiatCurrency = paramTokenizer.nextToken();
                 }
                 return new ItBitExchange(userId, walletId, clientKey, clientSecret, preferredFiatCurrency);
+            } else if ("bittrex".equalsIgnoreCase(prefix)) {
+                String apiKey = paramTokenizer.nextToken();
+                String apiSecret = paramTokenizer.nextToken();
+                return new BittrexExchange(apiKey, apiSecret);
+            } else if ("router".equalsIgnoreCase(prefix)) { //router:bitfinex:apikey:apisecret|bittrex:apikey:apisecret
+                String exchangeLogins = paramTokenizer.nextToken("\n").replaceFirst(":", "");
+                List<XChangeExchange> exchanges = new ArrayList<XChangeExchange>();
+                for (String exchangeLogin : exchangeLogins.split("\\|")) {
+                    IExchange exchange = createExchange(exchangeLogin);
+                    if (exchange instanceof XChangeExchange) {
+                        exchanges.add((XChangeExchange) exchange);
+                    }
+                }
+                if (!exchanges.isEmpty()) {
+                    return new RoutingExchange(exchanges);
+                }
+            } else if ("aggregated".equalsIgnoreCase(prefix)) { //aggregated:windowseconds:threshold:bitfinex:apikey:apisecret
+                long window = Long.parseLong(paramTokenizer.nextToken()) * 1000;
+                String threshold = paramTokenizer.nextToken();
+                // the rest is login of the underlying exchange, so we can't use : as a delimiter
+                String exchangeLogin = paramTokenizer.nextToken("\n").replaceFirst(":", "");
+                IExchange exchange = createExchange(exchangeLogin);
+                if (exchange instanceof IExchangeAdvanced) {
+                    return new AggregatingExchange((IExchangeAdvanced) exchange, window, "0".equals(threshold) ? null : new BigDecimal(threshold));
+                }
             }
         }
         return null;
@@ -86,11 +118,38 @@ public class BitcoinExtension implements IExtension{
 
     @Override
     public IWallet createWallet(String walletLogin) {
+        if (walletLogin !=null && !walletLogin.trim().isEmpty()) {
+            StringTokenizer st = new StringTokenizer(walletLogin,":");
+            String walletType = st.nextToken();
+            if ("failover".equalsIgnoreCase(walletType)) { //failover:bitcoind:protocol:user:password:ip:port:accountname|bitcore:apiKey:proxyUrl
+                String walletLogins = st.nextToken("\n").replaceFirst(":", "");
+                List<IWallet> wallets = new ArrayList<IWallet>();
+                for (String login : walletLogins.split("\\|")) {
+                    // backends must not cache balances, failover wallet measures their latency
+                    IWallet wallet = createUncachedWallet(login);
+                    if (wallet != null) {
+                        wallets.add(wallet);
+                    }
+                }
+                if (!wallets.isEmpty()) {
+                    return new BalanceCachingWallet(new FailoverWallet(wallets));
+                }
+                return null;
+            }
+            IWallet wallet = createUncachedWallet(walletLogin);
+            if (wallet != null) {
+                return new BalanceCachingWallet(wallet);
+            }
+        }
+        return null;
+    }
+
+    private IWallet createUncachedWallet(String walletLogin) {
         if (walletLogin !=null && !walletLogin.trim().isEmpty()) {
             StringTokenizer st = new StringTokenizer(walletLogin,":");
             String walletType = st.nextToken();
             if ("bitcoind".equalsIgnoreCase(walletType)) {
-                //"bitcoind:protocol:user:password:ip:port:accountname"
+                //"bitcoind:protocol:user:password:ip:port:accountname[:payoutbatchseconds]"
 
                 String protocol = st.nextToken();
                 String username = st.nextToken();
@@ -101,11 +160,12 @@ public class BitcoinExtension implements IExtension{
                 if (st.hasMoreTokens()) {
                     accountName = st.nextToken();
                 }
+                Long payoutBatchWindow = PayoutBatchingWallet.parseWindow(st.hasMoreTokens() ? st.nextToken() : null);
 
-
-                if (protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
+                if (payoutBatchWindow != null && protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
                     String rpcURL = protocol +"://" + username +":" + password + "@" + hostname +":" + port;
-                    return new BATMBitcoindRPCWallet(rpcURL,accountName);
+                    //bitcoind login has always accepted self-signed daemon certificates
+                    return PayoutBatchingWallet.wrap(new RPCWallet(rpcURL, accountName, ICurrencies.BTC, true), payoutBatchWindow);
                 }
             }else if ("bitcore".equalsIgnoreCase(walletType)) { //bitcore:apiKey:proxyUrl
                 String apiKey = st.nextToken();
@@ -163,6 +223,8 @@ public class BitcoinExtension implements IExtension{
                     preferredFiatCurrency = st.nextToken();
                 }
                 return new ItBitExchange(preferredFiatCurrency);
+            }else if ("bittrex".equalsIgnoreCase(rsType)) {
+                return new BittrexExchange();
             }
         }
         return null;
@@ -0,0 +1,107 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+import org.knowm.xchange.dto.account.AccountInfo;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Account info of one exchange account kept for a short time, so balance checks of all machines and
+ * dashboard refreshes share one authenticated call.
+ *
+ * Cache must be invalidated whenever balances change by our own action (trade, withdrawal). Account info
+ * downloaded while an invalidation happened is returned to its caller but not cached.
+ */
+public class AccountInfoCache {
+    public static final long DEFAULT_TTL = 10 * 1000; //10sec
+
+    private final Callable<AccountInfo> loader;
+    private final long ttl;
+
+    private final Object loadLock = new Object();
+    private volatile AccountInfo accountInfo;
+    private volatile long loadedAt;
+    private final AtomicLong generation = new AtomicLong();
+
+    public AccountInfoCache(Callable<AccountInfo> loader) {
+        this(loader, DEFAULT_TTL);
+    }
+
+    public AccountInfoCache(Callable<AccountInfo> loader, long ttl) {
+        this.loader = loader;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return cached account info, downloaded when missing or older than ttl. Concurrent callers wait for one download.
+     * @throws IOException when download fails
+     */
+    public AccountInfo get() throws IOException {
+        AccountInfo result = getIfFresh();
+        if (result != null) {
+            return result;
+        }
+        synchronized (loadLock) {
+            result = getIfFresh();
+            if (result != null) {
+                return result;
+            }
+            long loadGeneration = generation.get();
+            try {
+                result = loader.call();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            synchronized (this) {
+                if (loadGeneration == generation.get()) {
+                    accountInfo = result;
+                    loadedAt = System.currentTimeMillis();
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return cached account info regardless its age or null, never calls the exchange. Meant for logging.
+     */
+    public AccountInfo getIfPresent() {
+        return accountInfo;
+    }
+
+    /**
+     * Forces next {@link #get()} to download account info.
+     */
+    public synchronized void invalidate() {
+        generation.incrementAndGet();
+        loadedAt = 0;
+    }
+
+    private AccountInfo getIfFresh() {
+        AccountInfo result = accountInfo;
+        if (result != null && System.currentTimeMillis() - loadedAt < ttl) {
+            return result;
+        }
+        return null;
+    }
+}
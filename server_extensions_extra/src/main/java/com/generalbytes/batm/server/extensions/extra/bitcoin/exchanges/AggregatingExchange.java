@@ -0,0 +1,318 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+import com.generalbytes.batm.server.extensions.IExchangeAdvanced;
+import com.generalbytes.batm.server.extensions.ITask;
+import com.generalbytes.batm.server.extensions.extra.common.tasks.TaskScheduler;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exchange that collects purchases and sells of the same pair for a while and places one order for all of them.
+ *
+ * A batch of a pair is closed when the window since its first request elapses or when bought or sold amount
+ * reaches the threshold. Buys are netted against sells, only the difference is traded on the underlying
+ * exchange. Internal matching holds only together with the net order, so all requests of the batch complete
+ * when the net order is done: with the order id returned by the underlying exchange when it succeeds, failed
+ * when it fails. A batch whose buys and sells are equal trades both sides.
+ */
+public class AggregatingExchange implements IExchangeAdvanced {
+    private static final Logger log = LoggerFactory.getLogger(AggregatingExchange.class);
+
+    public static final long DEFAULT_WINDOW = 30 * 1000; //30sec
+    private static final long SYNCHRONOUS_TRADE_TIMEOUT = 35 * 1000; //35sec, on top of the window
+
+    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder()
+            .setNameFormat("exchange-aggregator-%d")
+            .setDaemon(true)
+            .build());
+    private static final AtomicLong batchCounter = new AtomicLong();
+
+    private final IExchangeAdvanced exchange;
+    private final long window;
+    private final BigDecimal threshold;
+
+    private final Map<String, Batch> batches = new HashMap<String, Batch>();
+
+    private static class Request {
+        private final boolean purchase;
+        private final BigDecimal amount;
+        private final SettableFuture<String> result = SettableFuture.create();
+
+        private Request(boolean purchase, BigDecimal amount) {
+            this.purchase = purchase;
+            this.amount = amount;
+        }
+    }
+
+    private static class Batch {
+        private final String id = "batch-" + batchCounter.incrementAndGet();
+        private final String cryptoCurrency;
+        private final String fiatCurrency;
+        private final List<Request> requests = new ArrayList<Request>();
+        private BigDecimal purchased = BigDecimal.ZERO;
+        private BigDecimal sold = BigDecimal.ZERO;
+
+        private Batch(String cryptoCurrency, String fiatCurrency) {
+            this.cryptoCurrency = cryptoCurrency;
+            this.fiatCurrency = fiatCurrency;
+        }
+    }
+
+    /**
+     * @param exchange exchange on which netted orders are placed
+     * @param window how long requests of one pair are collected (millis)
+     * @param threshold bought or sold crypto amount that closes the batch before the window elapses, null for none
+     */
+    public AggregatingExchange(IExchangeAdvanced exchange, long window, BigDecimal threshold) {
+        this.exchange = exchange;
+        this.window = window;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public ITask createPurchaseCoinsTask(BigDecimal amount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
+        return new AggregatedTask(true, amount, cryptoCurrency, fiatCurrencyToUse);
+    }
+
+    @Override
+    public ITask createSellCoinsTask(BigDecimal amount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
+        return new AggregatedTask(false, amount, cryptoCurrency, fiatCurrencyToUse);
+    }
+
+    @Override
+    public String purchaseCoins(BigDecimal amount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
+        ITask task = createPurchaseCoinsTask(amount, cryptoCurrency, fiatCurrencyToUse, description);
+        return (String) TaskScheduler.getInstance().execute(task, window + SYNCHRONOUS_TRADE_TIMEOUT);
+    }
+
+    @Override
+    public String sellCoins(BigDecimal cryptoAmount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
+        ITask task = createSellCoinsTask(cryptoAmount, cryptoCurrency, fiatCurrencyToUse, description);
+        return (String) TaskScheduler.getInstance().execute(task, window + SYNCHRONOUS_TRADE_TIMEOUT);
+    }
+
+    /**
+     * Adds request to the batch of its pair.
+     * @return future completed with the result of the request
+     */
+    private ListenableFuture<String> submit(boolean purchase, BigDecimal amount, String cryptoCurrency, String fiatCurrency) {
+        Request request = new Request(purchase, amount);
+        final String key = cryptoCurrency + "_" + fiatCurrency;
+        Batch full = null;
+        synchronized (batches) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(cryptoCurrency, fiatCurrency);
+                batches.put(key, batch);
+                final Batch scheduled = batch;
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        close(key, scheduled);
+                    }
+                }, window, TimeUnit.MILLISECONDS);
+            }
+            batch.requests.add(request);
+            if (purchase) {
+                batch.purchased = batch.purchased.add(amount);
+            } else {
+                batch.sold = batch.sold.add(amount);
+            }
+            if (threshold != null && (batch.purchased.compareTo(threshold) >= 0 || batch.sold.compareTo(threshold) >= 0)) {
+                full = batch;
+            }
+        }
+        if (full != null) {
+            close(key, full);
+        }
+        return request.result;
+    }
+
+    private void close(String key, Batch batch) {
+        synchronized (batches) {
+            if (batches.get(key) != batch) {
+                return; //already closed
+            }
+            batches.remove(key);
+        }
+        BigDecimal net = batch.purchased.subtract(batch.sold);
+        log.info("{} closed for {}_{}: purchased {}, sold {}, {} requests", batch.id, batch.cryptoCurrency, batch.fiatCurrency, batch.purchased, batch.sold, batch.requests.size());
+
+        if (net.signum() != 0) {
+            place(batch, net.signum() > 0, net.abs(), batch.requests);
+            return;
+        }
+        //nothing to net, both sides are traded so that every request still gets an order of the exchange
+        List<Request> purchases = new ArrayList<Request>();
+        List<Request> sells = new ArrayList<Request>();
+        for (Request request : batch.requests) {
+            (request.purchase ? purchases : sells).add(request);
+        }
+        place(batch, true, batch.purchased, purchases);
+        place(batch, false, batch.sold, sells);
+    }
+
+    /**
+     * Places the order and completes the requests with its id, or fails all of them when it fails.
+     */
+    private void place(Batch batch, boolean purchase, BigDecimal amount, final List<Request> requests) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        ITask task = purchase
+            ? exchange.createPurchaseCoinsTask(amount, batch.cryptoCurrency, batch.fiatCurrency, batch.id)
+            : exchange.createSellCoinsTask(amount, batch.cryptoCurrency, batch.fiatCurrency, batch.id);
+        if (task == null) {
+            log.error("{} did not create task for {}", exchange.getClass().getSimpleName(), batch.id);
+            complete(requests, null);
+            return;
+        }
+        Futures.addCallback(TaskScheduler.getInstance().submit(task), new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                complete(requests, result == null ? null : result.toString());
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                complete(requests, null);
+            }
+        });
+    }
+
+    private static void complete(List<Request> requests, String result) {
+        for (Request request : requests) {
+            request.result.set(result);
+        }
+    }
+
+    class AggregatedTask implements ITask {
+        private final boolean purchase;
+        private final BigDecimal amount;
+        private final String cryptoCurrency;
+        private final String fiatCurrency;
+
+        private ListenableFuture<String> future;
+        private String result;
+        private boolean finished;
+
+        AggregatedTask(boolean purchase, BigDecimal amount, String cryptoCurrency, String fiatCurrency) {
+            this.purchase = purchase;
+            this.amount = amount;
+            this.cryptoCurrency = cryptoCurrency;
+            this.fiatCurrency = fiatCurrency;
+        }
+
+        @Override
+        public boolean onCreate() {
+            future = submit(purchase, amount, cryptoCurrency, fiatCurrency);
+            return true;
+        }
+
+        @Override
+        public boolean onDoStep() {
+            if (future.isDone()) {
+                try {
+                    result = future.get();
+                } catch (Exception e) {
+                    log.error("Aggregated {} of {} {} failed", purchase ? "purchase" : "sell", amount, cryptoCurrency, e);
+                }
+                finished = true;
+            }
+            return result != null;
+        }
+
+        @Override
+        public void onFinish() {
+            log.debug("Aggregated {} task finished.", purchase ? "purchase" : "sell");
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public Object getResult() {
+            return result;
+        }
+
+        @Override
+        public boolean isFailed() {
+            return finished && result == null;
+        }
+
+        @Override
+        public long getShortestTimeForNexStepInvocation() {
+            return 1000;
+        }
+    }
+
+    @Override
+    public Set<String> getCryptoCurrencies() {
+        return exchange.getCryptoCurrencies();
+    }
+
+    @Override
+    public Set<String> getFiatCurrencies() {
+        return exchange.getFiatCurrencies();
+    }
+
+    @Override
+    public String getPreferredFiatCurrency() {
+        return exchange.getPreferredFiatCurrency();
+    }
+
+    @Override
+    public BigDecimal getCryptoBalance(String cryptoCurrency) {
+        return exchange.getCryptoBalance(cryptoCurrency);
+    }
+
+    @Override
+    public BigDecimal getFiatBalance(String fiatCurrency) {
+        return exchange.getFiatBalance(fiatCurrency);
+    }
+
+    @Override
+    public String sendCoins(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        return exchange.sendCoins(destinationAddress, amount, cryptoCurrency, description);
+    }
+
+    @Override
+    public String getDepositAddress(String cryptoCurrency) {
+        return exchange.getDepositAddress(cryptoCurrency);
+    }
+}
@@ -15,17 +15,17 @@
  * Web      :  http://www.generalbytes.com
  *
  ************************************************************************************/
-package com.generalbytes.batm.server.extensions.extra.gulden.sources;
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
 
-import javax.ws.rs.GET;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import java.io.IOException;
 
-@Path("/api/v1/")
-@Produces(MediaType.APPLICATION_JSON)
-public interface IGuldenTickerRateAPI {
-    @GET
-    @Path("ticker")
-    GuldenTickerResponse getTicker();
+public interface IOrderBookSource {
+    /**
+     * Returns recent order book of given currency pair.
+     * @param cryptoCurrency
+     * @param fiatCurrency
+     * @return
+     * @throws IOException
+     */
+    public OrderBookSnapshot getOrderBook(String cryptoCurrency, String fiatCurrency) throws IOException;
 }
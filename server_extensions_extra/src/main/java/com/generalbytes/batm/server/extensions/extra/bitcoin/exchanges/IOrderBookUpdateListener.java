@@ -15,19 +15,21 @@
  * Web      :  http://www.generalbytes.com
  *
  ************************************************************************************/
-package com.generalbytes.batm.server.extensions.extra.dash.sources.cddash;
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
 
-import com.generalbytes.batm.server.extensions.extra.dash.sources.cddash.*;
-import javax.ws.rs.GET;
-import javax.ws.rs.Path;
-import javax.ws.rs.PathParam;
-import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import org.knowm.xchange.dto.marketdata.OrderBook;
 
-@Path("/api/")
-@Produces(MediaType.APPLICATION_JSON)
-public interface ICryptodiggersRateAPI {
-    @GET
-    @Path("api.php?a=get_exch_rate&public=1&currency={fiatcurrency}&currency_crypto={cryptocurrency}")
-    CryptodiggersResponse getTicker(@PathParam("cryptocurrency") String cryptoCurrency, @PathParam("fiatcurrency") String fiatCurrency);
+public interface IOrderBookUpdateListener {
+    /**
+     * Called with full order book, i.e. after subscription or when snapshot was requested.
+     * @param orderBook
+     * @param sequence sequence number of the last update included in the order book
+     */
+    public void onSnapshot(OrderBook orderBook, long sequence);
+
+    /**
+     * Called with every incremental change of the order book.
+     * @param update
+     */
+    public void onUpdate(OrderBookUpdate update);
 }
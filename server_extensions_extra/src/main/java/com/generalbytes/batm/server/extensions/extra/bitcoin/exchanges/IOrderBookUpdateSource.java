@@ -0,0 +1,41 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+/**
+ * Feed of incremental order book changes (exchange streaming API, recorded file...).
+ */
+public interface IOrderBookUpdateSource {
+    /**
+     * Starts delivering updates of given pair to the listener.
+     * @param cryptoCurrency
+     * @param fiatCurrency
+     * @param listener
+     */
+    public void subscribe(String cryptoCurrency, String fiatCurrency, IOrderBookUpdateListener listener);
+
+    public void unsubscribe(String cryptoCurrency, String fiatCurrency);
+
+    /**
+     * Asks for full order book of given pair, which is delivered through {@link IOrderBookUpdateListener#onSnapshot}.
+     * Called on subscription and whenever a gap in sequence numbers is detected.
+     * @param cryptoCurrency
+     * @param fiatCurrency
+     */
+    public void requestSnapshot(String cryptoCurrency, String fiatCurrency);
+}
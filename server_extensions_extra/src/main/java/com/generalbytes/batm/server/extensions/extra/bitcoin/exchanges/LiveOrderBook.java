@@ -0,0 +1,227 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Order book of one currency pair maintained from incremental updates.
+ *
+ * Price levels are kept in sorted maps keyed by the exact price the exchange uses, so an update replaces
+ * only its own level even when several prices round to one fixed-point unit. Amounts and prices are
+ * converted to units (see {@link OrderBookSnapshot}) when the snapshot is built.
+ * Every update must carry the sequence number following the previous one; when a gap is detected
+ * the book stops being served, updates are buffered and a new snapshot is requested from the
+ * source. Buffered updates newer than the snapshot are applied on top of it.
+ *
+ * Readers get an immutable {@link OrderBookSnapshot}, which is rebuilt only after the book changed.
+ */
+public class LiveOrderBook implements IOrderBookUpdateListener {
+    private static final Logger log = LoggerFactory.getLogger(LiveOrderBook.class);
+
+    private static final int MAXIMUM_PENDING_UPDATES = 10000;
+
+    private final IOrderBookUpdateSource source;
+    private final String cryptoCurrency;
+    private final String fiatCurrency;
+
+    private final TreeMap<BigDecimal, Long> asks = new TreeMap<BigDecimal, Long>();
+    private final TreeMap<BigDecimal, Long> bids = new TreeMap<BigDecimal, Long>(Collections.reverseOrder());
+    private final List<OrderBookUpdate> pending = new ArrayList<OrderBookUpdate>();
+    private long sequence = -1;
+    private boolean synced;
+    private boolean snapshotRequested;
+    private OrderBookSnapshot snapshot; //null when book changed since it was built
+
+    public LiveOrderBook(IOrderBookUpdateSource source, String cryptoCurrency, String fiatCurrency) {
+        this.source = source;
+        this.cryptoCurrency = cryptoCurrency;
+        this.fiatCurrency = fiatCurrency;
+    }
+
+    /**
+     * Subscribes to the source and asks for initial snapshot.
+     */
+    public void start() {
+        synchronized (this) {
+            snapshotRequested = true; //updates arriving before the snapshot are only buffered
+        }
+        source.subscribe(cryptoCurrency, fiatCurrency, this);
+        source.requestSnapshot(cryptoCurrency, fiatCurrency);
+    }
+
+    public void stop() {
+        source.unsubscribe(cryptoCurrency, fiatCurrency);
+        synchronized (this) {
+            synced = false;
+            snapshot = null;
+        }
+    }
+
+    /**
+     * @return current order book or null while the book is not in sync with the exchange
+     */
+    public synchronized OrderBookSnapshot getSnapshot() {
+        if (!synced) {
+            return null;
+        }
+        if (snapshot == null) {
+            snapshot = buildSnapshot();
+        }
+        return snapshot;
+    }
+
+    public synchronized boolean isSynced() {
+        return synced;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public void onSnapshot(OrderBook orderBook, long snapshotSequence) {
+        synchronized (this) {
+            asks.clear();
+            bids.clear();
+            for (LimitOrder ask : orderBook.getAsks()) {
+                add(asks, ask.getLimitPrice(), OrderBookSnapshot.toUnits(ask.getTradableAmount(), RoundingMode.DOWN));
+            }
+            for (LimitOrder bid : orderBook.getBids()) {
+                add(bids, bid.getLimitPrice(), OrderBookSnapshot.toUnits(bid.getTradableAmount(), RoundingMode.DOWN));
+            }
+            sequence = snapshotSequence;
+            synced = true;
+            snapshotRequested = false;
+            snapshot = null;
+            log.debug("{}_{} order book synced at sequence {}", cryptoCurrency, fiatCurrency, sequence);
+
+            List<OrderBookUpdate> buffered = new ArrayList<OrderBookUpdate>(pending);
+            pending.clear();
+            Collections.sort(buffered, new Comparator<OrderBookUpdate>() {
+                @Override
+                public int compare(OrderBookUpdate lhs, OrderBookUpdate rhs) {
+                    return Long.compare(lhs.getSequence(), rhs.getSequence());
+                }
+            });
+            for (OrderBookUpdate update : buffered) {
+                if (update.getSequence() <= sequence) {
+                    continue;
+                }
+                if (update.getSequence() != sequence + 1) {
+                    //snapshot is older than what we missed, next update will ask for another one
+                    log.warn("{}_{} order book snapshot {} does not connect to buffered update {}", cryptoCurrency, fiatCurrency, sequence, update.getSequence());
+                    synced = false;
+                    pending.addAll(buffered.subList(buffered.indexOf(update), buffered.size()));
+                    return;
+                }
+                apply(update);
+            }
+        }
+    }
+
+    @Override
+    public void onUpdate(OrderBookUpdate update) {
+        boolean request = false;
+        synchronized (this) {
+            if (synced) {
+                if (update.getSequence() <= sequence) {
+                    return; //already included in snapshot
+                }
+                if (update.getSequence() == sequence + 1) {
+                    apply(update);
+                    return;
+                }
+                log.warn("{}_{} order book gap: expected sequence {}, got {}", cryptoCurrency, fiatCurrency, sequence + 1, update.getSequence());
+                synced = false;
+                snapshot = null;
+            }
+            if (pending.size() >= MAXIMUM_PENDING_UPDATES) {
+                pending.remove(0);
+            }
+            pending.add(update);
+            if (!snapshotRequested) {
+                snapshotRequested = true;
+                request = true;
+            }
+        }
+        if (request) {
+            source.requestSnapshot(cryptoCurrency, fiatCurrency);
+        }
+    }
+
+    private void apply(OrderBookUpdate update) {
+        put(update.getType() == Order.OrderType.ASK ? asks : bids, update.getPrice(), OrderBookSnapshot.toUnits(update.getAmount(), RoundingMode.DOWN));
+        sequence = update.getSequence();
+        snapshot = null;
+    }
+
+    private static void put(TreeMap<BigDecimal, Long> levels, BigDecimal price, long amount) {
+        if (amount <= 0) {
+            levels.remove(price);
+        } else {
+            levels.put(price, amount);
+        }
+    }
+
+    /**
+     * Snapshot may list several orders at one price, their amounts add up.
+     */
+    private static void add(TreeMap<BigDecimal, Long> levels, BigDecimal price, long amount) {
+        if (amount <= 0) {
+            return;
+        }
+        Long current = levels.get(price);
+        levels.put(price, current == null ? amount : current + amount);
+    }
+
+    private OrderBookSnapshot buildSnapshot() {
+        long[] askPrices = new long[asks.size()];
+        long[] askAmounts = new long[asks.size()];
+        copy(asks, askPrices, askAmounts, RoundingMode.UP);
+        long[] bidPrices = new long[bids.size()];
+        long[] bidAmounts = new long[bids.size()];
+        copy(bids, bidPrices, bidAmounts, RoundingMode.DOWN);
+        return OrderBookSnapshot.create(askPrices, askAmounts, bidPrices, bidAmounts);
+    }
+
+    /**
+     * Distinct prices rounding to one unit stay separate levels of equal price, cumulative depth is the same.
+     */
+    private static void copy(TreeMap<BigDecimal, Long> levels, long[] prices, long[] amounts, RoundingMode priceRounding) {
+        int i = 0;
+        for (Map.Entry<BigDecimal, Long> level : levels.entrySet()) {
+            prices[i] = OrderBookSnapshot.toUnits(level.getKey(), priceRounding);
+            amounts[i] = level.getValue();
+            i++;
+        }
+    }
+}
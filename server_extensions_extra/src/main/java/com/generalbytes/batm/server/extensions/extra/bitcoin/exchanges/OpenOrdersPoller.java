@@ -0,0 +1,155 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.OpenOrders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches orders of one exchange account until they disappear from open orders.
+ *
+ * Open orders are downloaded once per interval no matter how many orders are watched, their ids
+ * are put to a hash set and every watched order that is not in the set anymore gets its future
+ * completed. Polling runs only while there is something to watch.
+ *
+ * Freshly placed orders may take a moment to show up in open orders, so an order is evaluated
+ * only by polls that started at least {@link #SETTLE_TIME} after it was placed.
+ */
+public class OpenOrdersPoller {
+    private static final Logger log = LoggerFactory.getLogger(OpenOrdersPoller.class);
+
+    public static final long DEFAULT_INTERVAL = 3 * 1000; //3sec
+    public static final long SETTLE_TIME = 2 * 1000; //2sec
+
+    private static final int THREADS = 4;
+
+    //polls of one exchange never overlap, so an exchange hitting its read timeout holds one thread and others keep being polled
+    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(THREADS, new ThreadFactoryBuilder()
+            .setNameFormat("open-orders-poller-%d")
+            .setDaemon(true)
+            .build());
+
+    private final String name;
+    private final Callable<OpenOrders> openOrdersLoader;
+    private final long interval;
+
+    private final Map<String, WatchedOrder> watched = new HashMap<String, WatchedOrder>();
+    private ScheduledFuture<?> polling;
+
+    private static class WatchedOrder {
+        private final long since = System.currentTimeMillis();
+        private final SettableFuture<String> future = SettableFuture.create();
+    }
+
+    public OpenOrdersPoller(String name, Callable<OpenOrders> openOrdersLoader) {
+        this(name, openOrdersLoader, DEFAULT_INTERVAL);
+    }
+
+    public OpenOrdersPoller(String name, Callable<OpenOrders> openOrdersLoader, long interval) {
+        this.name = name;
+        this.openOrdersLoader = openOrdersLoader;
+        this.interval = interval;
+    }
+
+    /**
+     * Starts watching the order.
+     * @param orderId
+     * @return future completed with order id once the order is no longer open.
+     * Cancelling the future stops watching.
+     */
+    public synchronized ListenableFuture<String> watch(String orderId) {
+        WatchedOrder order = watched.get(orderId);
+        if (order == null) {
+            order = new WatchedOrder();
+            watched.put(orderId, order);
+        }
+        if (polling == null) {
+            polling = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    poll();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return order.future;
+    }
+
+    public synchronized int getWatchedCount() {
+        return watched.size();
+    }
+
+    private void poll() {
+        long started = System.currentTimeMillis();
+        synchronized (this) {
+            removeCancelled();
+            if (watched.isEmpty()) {
+                polling.cancel(false);
+                polling = null;
+                return;
+            }
+        }
+
+        Set<String> openIds = new HashSet<String>();
+        try {
+            OpenOrders openOrders = openOrdersLoader.call();
+            for (LimitOrder openOrder : openOrders.getOpenOrders()) {
+                openIds.add(openOrder.getId());
+            }
+        } catch (Throwable e) {
+            log.warn("{} exchange failed to get open orders: {}", name, e.toString());
+            return;
+        }
+
+        synchronized (this) {
+            for (Iterator<Map.Entry<String, WatchedOrder>> it = watched.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, WatchedOrder> entry = it.next();
+                WatchedOrder order = entry.getValue();
+                if (started - order.since < SETTLE_TIME || openIds.contains(entry.getKey())) {
+                    continue;
+                }
+                log.debug("{} exchange order {} is not open anymore", name, entry.getKey());
+                it.remove();
+                order.future.set(entry.getKey());
+            }
+        }
+    }
+
+    private void removeCancelled() {
+        for (Iterator<WatchedOrder> it = watched.values().iterator(); it.hasNext(); ) {
+            if (it.next().future.isCancelled()) {
+                it.remove();
+            }
+        }
+    }
+}
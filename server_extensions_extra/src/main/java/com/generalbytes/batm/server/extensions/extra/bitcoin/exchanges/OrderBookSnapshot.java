@@ -0,0 +1,209 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable order book prepared for price calculations.
+ *
+ * Levels are stored best price first together with cumulative depth, so the price of any
+ * amount is found by binary search instead of sorting and walking the book on every request.
+ * Prices and amounts are kept as fixed-point longs with {@link #SCALE} decimal places (satoshis
+ * for amounts), so the search does not allocate; BigDecimal is created only for the result.
+ * Prices are rounded against the customer and amounts down, so a quote never promises more
+ * than the book offers. Snapshots are shared by all threads asking for the same pair.
+ */
+public class OrderBookSnapshot {
+    public static final int SCALE = 8;
+    private static final double UNIT = 1e8;
+
+    private static final Comparator<LimitOrder> ASCENDING = new Comparator<LimitOrder>() {
+        @Override
+        public int compare(LimitOrder lhs, LimitOrder rhs) {
+            return lhs.getLimitPrice().compareTo(rhs.getLimitPrice());
+        }
+    };
+    private static final Comparator<LimitOrder> DESCENDING = Collections.reverseOrder(ASCENDING);
+
+    private final long timestamp;
+    private final long[] askPrices;
+    private final long[] askDepths; //cumulative amount of asks[0..i]
+    private final long[] bidPrices;
+    private final long[] bidDepths; //cumulative amount of bids[0..i]
+
+    private OrderBookSnapshot(long[] askPrices, long[] askDepths, long[] bidPrices, long[] bidDepths) {
+        this.timestamp = System.currentTimeMillis();
+        this.askPrices = askPrices;
+        this.askDepths = askDepths;
+        this.bidPrices = bidPrices;
+        this.bidDepths = bidDepths;
+    }
+
+    public static OrderBookSnapshot create(OrderBook orderBook) {
+        List<LimitOrder> asks = sorted(orderBook.getAsks(), ASCENDING);
+        List<LimitOrder> bids = sorted(orderBook.getBids(), DESCENDING);
+        long[] askPrices = new long[asks.size()];
+        long[] askDepths = new long[asks.size()];
+        fill(asks, askPrices, askDepths, RoundingMode.UP);
+        long[] bidPrices = new long[bids.size()];
+        long[] bidDepths = new long[bids.size()];
+        fill(bids, bidPrices, bidDepths, RoundingMode.DOWN);
+        return new OrderBookSnapshot(askPrices, askDepths, bidPrices, bidDepths);
+    }
+
+    /**
+     * Creates snapshot from levels already converted to units and sorted best price first.
+     * Amount arrays are turned into cumulative depth in place.
+     */
+    static OrderBookSnapshot create(long[] askPrices, long[] askAmounts, long[] bidPrices, long[] bidAmounts) {
+        accumulate(askAmounts);
+        accumulate(bidAmounts);
+        return new OrderBookSnapshot(askPrices, askAmounts, bidPrices, bidAmounts);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return total fiat paid for buying given amount priced at the limit of the level where it is filled, or null when the book is not deep enough
+     */
+    public BigDecimal getBuyPrice(BigDecimal cryptoAmount) {
+        return priceForAmount(askPrices, askDepths, cryptoAmount);
+    }
+
+    /**
+     * @return total fiat received for selling given amount priced at the limit of the level where it is filled, or null when the book is not deep enough
+     */
+    public BigDecimal getSellPrice(BigDecimal cryptoAmount) {
+        return priceForAmount(bidPrices, bidDepths, cryptoAmount);
+    }
+
+    /**
+     * @return crypto amount bought for given fiat amount or null when the book is not deep enough
+     */
+    public BigDecimal getBuyAmount(BigDecimal fiatAmount) {
+        return amountForFiat(askPrices, askDepths, fiatAmount, RoundingMode.DOWN);
+    }
+
+    /**
+     * @return crypto amount that has to be sold to get given fiat amount or null when the book is not deep enough
+     */
+    public BigDecimal getSellAmount(BigDecimal fiatAmount) {
+        return amountForFiat(bidPrices, bidDepths, fiatAmount, RoundingMode.UP);
+    }
+
+    public int getAskCount() {
+        return askPrices.length;
+    }
+
+    public int getBidCount() {
+        return bidPrices.length;
+    }
+
+    private static BigDecimal priceForAmount(long[] prices, long[] depths, BigDecimal cryptoAmount) {
+        int i = indexOfDepth(depths, toUnits(cryptoAmount, RoundingMode.UP));
+        return i < 0 ? null : BigDecimal.valueOf(prices[i], SCALE).multiply(cryptoAmount);
+    }
+
+    /**
+     * @return index of the first level whose cumulative depth covers given amount or -1
+     */
+    static int indexOfDepth(long[] depths, long amount) {
+        int low = 0;
+        int high = depths.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (amount <= depths[mid]) {
+                found = mid;
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return found;
+    }
+
+    private static BigDecimal amountForFiat(long[] prices, long[] depths, BigDecimal fiatAmount, RoundingMode roundingMode) {
+        double fiat = fiatAmount.doubleValue();
+        for (int i = 0; i < prices.length; i++) {
+            if (prices[i] <= 0) {
+                continue;
+            }
+            //level is located in floating point, the amount itself is computed exactly
+            if (fiat / prices[i] * UNIT <= depths[i] / UNIT * (1 + 1e-12)) {
+                BigDecimal cryptoAmount = fiatAmount.divide(BigDecimal.valueOf(prices[i], SCALE), SCALE, roundingMode);
+                if (toUnits(cryptoAmount, RoundingMode.UP) <= depths[i]) {
+                    return cryptoAmount;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void fill(List<LimitOrder> levels, long[] prices, long[] depths, RoundingMode priceRounding) {
+        long total = 0;
+        for (int i = 0; i < prices.length; i++) {
+            LimitOrder level = levels.get(i);
+            long amount = toUnits(level.getTradableAmount(), RoundingMode.DOWN);
+            total = amount > Long.MAX_VALUE - total ? Long.MAX_VALUE : total + amount;
+            prices[i] = toUnits(level.getLimitPrice(), priceRounding);
+            depths[i] = total;
+        }
+    }
+
+    private static void accumulate(long[] amounts) {
+        long total = 0;
+        for (int i = 0; i < amounts.length; i++) {
+            total = amounts[i] > Long.MAX_VALUE - total ? Long.MAX_VALUE : total + amounts[i];
+            amounts[i] = total;
+        }
+    }
+
+    static long toUnits(BigDecimal value, RoundingMode roundingMode) {
+        BigDecimal scaled = value.setScale(SCALE, roundingMode);
+        if (scaled.precision() - scaled.scale() > 18 - SCALE) {
+            return value.signum() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return scaled.unscaledValue().longValue();
+    }
+
+    /**
+     * Exchanges usually return levels already sorted, sorting is done only when they are not.
+     */
+    private static List<LimitOrder> sorted(List<LimitOrder> levels, Comparator<LimitOrder> comparator) {
+        for (int i = 1; i < levels.size(); i++) {
+            if (comparator.compare(levels.get(i - 1), levels.get(i)) > 0) {
+                List<LimitOrder> copy = new ArrayList<LimitOrder>(levels);
+                Collections.sort(copy, comparator);
+                return copy;
+            }
+        }
+        return levels;
+    }
+}
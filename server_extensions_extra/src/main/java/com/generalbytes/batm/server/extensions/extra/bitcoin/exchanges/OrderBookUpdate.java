@@ -0,0 +1,65 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+import org.knowm.xchange.dto.Order;
+
+import java.math.BigDecimal;
+
+/**
+ * Change of one price level. Amount is the new total amount of the level, zero removes the level.
+ */
+public class OrderBookUpdate {
+    private final long sequence;
+    private final Order.OrderType type;
+    private final BigDecimal price;
+    private final BigDecimal amount;
+
+    public OrderBookUpdate(long sequence, Order.OrderType type, BigDecimal price, BigDecimal amount) {
+        this.sequence = sequence;
+        this.type = type;
+        this.price = price;
+        this.amount = amount;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Order.OrderType getType() {
+        return type;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderBookUpdate{" +
+                "sequence=" + sequence +
+                ", type=" + type +
+                ", price=" + price +
+                ", amount=" + amount +
+                '}';
+    }
+}
@@ -0,0 +1,216 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Precomputes buy and sell quotes for a ladder of standard amounts.
+ *
+ * Each currency pair that was asked for is refreshed in the background: its order book is
+ * downloaded and prices are computed for every configured crypto amount and every configured
+ * fiat denomination (how much crypto the customer gets for a 20, 50, 100... note). Lookups are
+ * then plain array reads, so price display on the machines does not wait for the exchange.
+ * Lookups of amounts that are not on the ladder, or of quotes that are too old, return null and
+ * the caller is expected to fall back to calculation from a live order book.
+ *
+ * Pairs that were not asked for during {@link #IDLE_TIMEOUT} stop being refreshed.
+ */
+public class QuoteEngine {
+    private static final Logger log = LoggerFactory.getLogger(QuoteEngine.class);
+
+    public static final BigDecimal[] DEFAULT_CRYPTO_AMOUNTS = {new BigDecimal("0.01"), new BigDecimal("0.1"), BigDecimal.ONE, BigDecimal.TEN};
+    public static final BigDecimal[] DEFAULT_FIAT_AMOUNTS = {new BigDecimal("20"), new BigDecimal("50"), new BigDecimal("100"), new BigDecimal("500")};
+    public static final long DEFAULT_REFRESH_PERIOD = 10 * 1000; //10sec
+    public static final long IDLE_TIMEOUT = 10 * 60 * 1000; //10min
+
+    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, new ThreadFactoryBuilder()
+            .setNameFormat("quote-engine-%d")
+            .setDaemon(true)
+            .build());
+
+    private final String name;
+    private final IOrderBookSource source;
+    private final BigDecimal[] cryptoAmounts;
+    private final BigDecimal[] fiatAmounts;
+    private final long refreshPeriod;
+    private final ConcurrentMap<String, Pair> pairs = new ConcurrentHashMap<String, Pair>();
+
+    /**
+     * Quotes of one refresh. Index of each price corresponds to index in the ladder.
+     * Null entries mean the order book was not deep enough.
+     */
+    private static class Quotes {
+        private final long timestamp;
+        private final BigDecimal[] buyPrices;   //total fiat paid for cryptoAmounts[i]
+        private final BigDecimal[] sellPrices;  //total fiat received for cryptoAmounts[i]
+        private final BigDecimal[] buyAmounts;  //crypto bought for fiatAmounts[i]
+        private final BigDecimal[] sellAmounts; //crypto sold for fiatAmounts[i]
+
+        private Quotes(BigDecimal[] buyPrices, BigDecimal[] sellPrices, BigDecimal[] buyAmounts, BigDecimal[] sellAmounts) {
+            this.timestamp = System.currentTimeMillis();
+            this.buyPrices = buyPrices;
+            this.sellPrices = sellPrices;
+            this.buyAmounts = buyAmounts;
+            this.sellAmounts = sellAmounts;
+        }
+    }
+
+    private class Pair implements Runnable {
+        private final String cryptoCurrency;
+        private final String fiatCurrency;
+        private volatile Quotes quotes;
+        private volatile long lastRequest = System.currentTimeMillis();
+        private volatile ScheduledFuture<?> future;
+
+        private Pair(String cryptoCurrency, String fiatCurrency) {
+            this.cryptoCurrency = cryptoCurrency;
+            this.fiatCurrency = fiatCurrency;
+        }
+
+        @Override
+        public void run() {
+            if (System.currentTimeMillis() - lastRequest > IDLE_TIMEOUT) {
+                log.debug("{} quotes of {}_{} are not used anymore", name, cryptoCurrency, fiatCurrency);
+                pairs.remove(buildKey(cryptoCurrency, fiatCurrency), this);
+                future.cancel(false);
+                return;
+            }
+            try {
+                OrderBookSnapshot orderBook = source.getOrderBook(cryptoCurrency, fiatCurrency);
+                if (orderBook != null) {
+                    quotes = computeQuotes(orderBook);
+                }
+            } catch (Throwable e) {
+                log.warn("{} failed to refresh quotes of {}_{}: {}", name, cryptoCurrency, fiatCurrency, e.toString());
+            }
+        }
+    }
+
+    public QuoteEngine(String name, IOrderBookSource source) {
+        this(name, source, DEFAULT_CRYPTO_AMOUNTS, DEFAULT_FIAT_AMOUNTS, DEFAULT_REFRESH_PERIOD);
+    }
+
+    public QuoteEngine(String name, IOrderBookSource source, BigDecimal[] cryptoAmounts, BigDecimal[] fiatAmounts, long refreshPeriod) {
+        this.name = name;
+        this.source = source;
+        this.cryptoAmounts = cryptoAmounts.clone();
+        this.fiatAmounts = fiatAmounts.clone();
+        this.refreshPeriod = refreshPeriod;
+    }
+
+    /**
+     * @return total fiat price of buying given crypto amount or null when amount is not on the ladder or quote is not available
+     */
+    public BigDecimal getBuyPrice(String cryptoCurrency, String fiatCurrency, BigDecimal cryptoAmount) {
+        int i = indexOf(cryptoAmounts, cryptoAmount);
+        Quotes quotes = i < 0 ? null : getQuotes(cryptoCurrency, fiatCurrency);
+        return quotes == null ? null : quotes.buyPrices[i];
+    }
+
+    /**
+     * @return total fiat received for selling given crypto amount or null when amount is not on the ladder or quote is not available
+     */
+    public BigDecimal getSellPrice(String cryptoCurrency, String fiatCurrency, BigDecimal cryptoAmount) {
+        int i = indexOf(cryptoAmounts, cryptoAmount);
+        Quotes quotes = i < 0 ? null : getQuotes(cryptoCurrency, fiatCurrency);
+        return quotes == null ? null : quotes.sellPrices[i];
+    }
+
+    /**
+     * @return crypto amount bought for given fiat denomination or null when denomination is not on the ladder or quote is not available
+     */
+    public BigDecimal getBuyAmount(String cryptoCurrency, String fiatCurrency, BigDecimal fiatAmount) {
+        int i = indexOf(fiatAmounts, fiatAmount);
+        Quotes quotes = i < 0 ? null : getQuotes(cryptoCurrency, fiatCurrency);
+        return quotes == null ? null : quotes.buyAmounts[i];
+    }
+
+    /**
+     * @return crypto amount that has to be sold to get given fiat denomination or null when denomination is not on the ladder or quote is not available
+     */
+    public BigDecimal getSellAmount(String cryptoCurrency, String fiatCurrency, BigDecimal fiatAmount) {
+        int i = indexOf(fiatAmounts, fiatAmount);
+        Quotes quotes = i < 0 ? null : getQuotes(cryptoCurrency, fiatCurrency);
+        return quotes == null ? null : quotes.sellAmounts[i];
+    }
+
+    /**
+     * Returns fresh quotes of the pair. First request of a pair only starts its refreshing.
+     */
+    private Quotes getQuotes(String cryptoCurrency, String fiatCurrency) {
+        String key = buildKey(cryptoCurrency, fiatCurrency);
+        Pair pair = pairs.get(key);
+        if (pair == null) {
+            Pair created = new Pair(cryptoCurrency, fiatCurrency);
+            pair = pairs.putIfAbsent(key, created);
+            if (pair == null) {
+                created.future = scheduler.scheduleWithFixedDelay(created, 0, refreshPeriod, TimeUnit.MILLISECONDS);
+                return null;
+            }
+        }
+        pair.lastRequest = System.currentTimeMillis();
+        Quotes quotes = pair.quotes;
+        if (quotes == null || System.currentTimeMillis() - quotes.timestamp > 3 * refreshPeriod) {
+            return null;
+        }
+        return quotes;
+    }
+
+    private Quotes computeQuotes(OrderBookSnapshot orderBook) {
+        BigDecimal[] buyPrices = new BigDecimal[cryptoAmounts.length];
+        BigDecimal[] sellPrices = new BigDecimal[cryptoAmounts.length];
+        for (int i = 0; i < cryptoAmounts.length; i++) {
+            buyPrices[i] = orderBook.getBuyPrice(cryptoAmounts[i]);
+            sellPrices[i] = orderBook.getSellPrice(cryptoAmounts[i]);
+        }
+        BigDecimal[] buyAmounts = new BigDecimal[fiatAmounts.length];
+        BigDecimal[] sellAmounts = new BigDecimal[fiatAmounts.length];
+        for (int i = 0; i < fiatAmounts.length; i++) {
+            buyAmounts[i] = orderBook.getBuyAmount(fiatAmounts[i]);
+            sellAmounts[i] = orderBook.getSellAmount(fiatAmounts[i]);
+        }
+        return new Quotes(buyPrices, sellPrices, buyAmounts, sellAmounts);
+    }
+
+    private static int indexOf(BigDecimal[] ladder, BigDecimal amount) {
+        if (amount == null) {
+            return -1;
+        }
+        for (int i = 0; i < ladder.length; i++) {
+            if (ladder[i].compareTo(amount) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String buildKey(String cryptoCurrency, String fiatCurrency) {
+        return cryptoCurrency + "_" + fiatCurrency;
+    }
+}
@@ -0,0 +1,190 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Order book feed replayed from a recorded file, for tests and for reproducing pricing issues.
+ *
+ * File contains one pair, one event per line, lines starting with # are ignored:
+ * <pre>
+ * snapshot 100
+ * bid 599.50 1.2
+ * ask 600.10 0.5
+ * end
+ * update 101 ask 600.10 0
+ * update 102 bid 599.70 2.0
+ * </pre>
+ * Update amount is the new amount of the level, 0 removes it. Events are delivered synchronously
+ * by {@link #play()}. Snapshots in the file answer {@link #requestSnapshot(String, String)}:
+ * a snapshot is delivered only when one was requested, otherwise it is skipped, just like
+ * an exchange sends a snapshot only when asked.
+ */
+public class ReplayOrderBookUpdateSource implements IOrderBookUpdateSource {
+    private final List<Object> events; //OrderBookUpdate or SnapshotEvent
+    private final Map<String, IOrderBookUpdateListener> listeners = new ConcurrentHashMap<String, IOrderBookUpdateListener>();
+    private int position;
+    private boolean snapshotRequested;
+
+    private static class SnapshotEvent {
+        private final long sequence;
+        private final List<LimitOrder> asks = new ArrayList<LimitOrder>();
+        private final List<LimitOrder> bids = new ArrayList<LimitOrder>();
+
+        private SnapshotEvent(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    public ReplayOrderBookUpdateSource(File file) throws IOException {
+        this(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    }
+
+    public ReplayOrderBookUpdateSource(Reader reader) throws IOException {
+        events = parse(new BufferedReader(reader));
+    }
+
+    @Override
+    public void subscribe(String cryptoCurrency, String fiatCurrency, IOrderBookUpdateListener listener) {
+        listeners.put(cryptoCurrency + "_" + fiatCurrency, listener);
+    }
+
+    @Override
+    public void unsubscribe(String cryptoCurrency, String fiatCurrency) {
+        listeners.remove(cryptoCurrency + "_" + fiatCurrency);
+    }
+
+    @Override
+    public synchronized void requestSnapshot(String cryptoCurrency, String fiatCurrency) {
+        snapshotRequested = true;
+    }
+
+    /**
+     * Delivers all remaining events.
+     * @return number of delivered events
+     */
+    public int play() {
+        return play(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Delivers up to given number of events, skipped snapshots are not counted.
+     * @return number of delivered events
+     */
+    public int play(int count) {
+        int delivered = 0;
+        while (delivered < count) {
+            Object event;
+            synchronized (this) {
+                if (position >= events.size()) {
+                    break;
+                }
+                event = events.get(position++);
+                if (event instanceof SnapshotEvent) {
+                    if (!snapshotRequested) {
+                        continue;
+                    }
+                    snapshotRequested = false;
+                }
+            }
+            for (IOrderBookUpdateListener listener : listeners.values()) {
+                if (event instanceof SnapshotEvent) {
+                    SnapshotEvent snapshot = (SnapshotEvent) event;
+                    listener.onSnapshot(new OrderBook(new Date(), snapshot.asks, snapshot.bids), snapshot.sequence);
+                } else {
+                    listener.onUpdate((OrderBookUpdate) event);
+                }
+            }
+            delivered++;
+        }
+        return delivered;
+    }
+
+    public synchronized boolean hasMoreEvents() {
+        return position < events.size();
+    }
+
+    private static List<Object> parse(BufferedReader reader) throws IOException {
+        List<Object> result = new ArrayList<Object>();
+        try {
+            SnapshotEvent snapshot = null;
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] tokens = line.split("\\s+");
+                try {
+                    if ("snapshot".equals(tokens[0])) {
+                        snapshot = new SnapshotEvent(Long.parseLong(tokens[1]));
+                    } else if ("end".equals(tokens[0]) && snapshot != null) {
+                        result.add(snapshot);
+                        snapshot = null;
+                    } else if ("update".equals(tokens[0])) {
+                        result.add(new OrderBookUpdate(Long.parseLong(tokens[1]), parseType(tokens[2]), new BigDecimal(tokens[3]), new BigDecimal(tokens[4])));
+                    } else if (snapshot != null) {
+                        Order.OrderType type = parseType(tokens[0]);
+                        LimitOrder level = new LimitOrder(type, new BigDecimal(tokens[2]), CurrencyPair.BTC_USD, null, null, new BigDecimal(tokens[1]));
+                        if (type == Order.OrderType.ASK) {
+                            snapshot.asks.add(level);
+                        } else {
+                            snapshot.bids.add(level);
+                        }
+                    } else {
+                        throw new IllegalArgumentException("unexpected event");
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Invalid line " + lineNumber + ": " + line, e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    private static Order.OrderType parseType(String side) {
+        if ("bid".equalsIgnoreCase(side)) {
+            return Order.OrderType.BID;
+        }
+        if ("ask".equalsIgnoreCase(side)) {
+            return Order.OrderType.ASK;
+        }
+        throw new IllegalArgumentException("Unknown side " + side);
+    }
+}
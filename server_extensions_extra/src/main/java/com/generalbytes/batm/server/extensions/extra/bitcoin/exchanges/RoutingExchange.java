@@ -0,0 +1,466 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
+
+import com.generalbytes.batm.server.extensions.IExchangeAdvanced;
+import com.generalbytes.batm.server.extensions.ITask;
+import com.generalbytes.batm.server.extensions.extra.common.tasks.TaskScheduler;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exchange that routes every purchase and sell to the exchanges where it is cheapest.
+ *
+ * Order books and balances of all exchanges are refreshed in background for pairs that were traded
+ * recently, so routing decisions are made from local state only and never wait for the network.
+ * An order is split into {@link #SPLIT_PARTS} parts, every part goes to the exchange with the best
+ * price for its next part that has enough balance to pay for it. Exchanges whose upstream is failing
+ * or whose order book is not known yet are skipped. Parts of the order are then placed on their
+ * exchanges concurrently. When some of the parts fail, the order is reported with results of the parts
+ * that were traded, so that it is not repeated on the exchanges where it already succeeded.
+ *
+ * When nothing is known about the pair yet the whole order goes to the first exchange trading the pair.
+ * Background refresh runs only while some pair was traded within {@link #IDLE_AFTER}.
+ */
+public class RoutingExchange implements IExchangeAdvanced {
+    private static final Logger log = LoggerFactory.getLogger(RoutingExchange.class);
+
+    public static final int SPLIT_PARTS = 10;
+    private static final long REFRESH_PERIOD = 5 * 1000; //5sec
+    private static final long STALE_AFTER = 3 * REFRESH_PERIOD;
+    private static final long IDLE_AFTER = 10 * 60 * 1000; //10min
+    private static final long SYNCHRONOUS_TRADE_TIMEOUT = 35 * 1000; //35sec
+
+    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder()
+            .setNameFormat("exchange-router-%d")
+            .setDaemon(true)
+            .build());
+
+    private final List<XChangeExchange> exchanges;
+    private final ConcurrentMap<String, PairState> pairs = new ConcurrentHashMap<String, PairState>();
+    private ScheduledFuture<?> refreshing; //guarded by this
+
+    /**
+     * Local view of one pair on all exchanges, arrays are indexed like {@link #exchanges}.
+     */
+    private static class PairState {
+        private final String cryptoCurrency;
+        private final String fiatCurrency;
+        private volatile OrderBookSnapshot[] orderBooks;
+        private volatile BigDecimal[] cryptoBalances;
+        private volatile BigDecimal[] fiatBalances;
+        private volatile long refreshedAt;
+        private volatile long usedAt = System.currentTimeMillis();
+
+        private PairState(String cryptoCurrency, String fiatCurrency, int size) {
+            this.cryptoCurrency = cryptoCurrency;
+            this.fiatCurrency = fiatCurrency;
+            orderBooks = new OrderBookSnapshot[size];
+            cryptoBalances = new BigDecimal[size];
+            fiatBalances = new BigDecimal[size];
+        }
+    }
+
+    public RoutingExchange(List<XChangeExchange> exchanges) {
+        this.exchanges = new ArrayList<XChangeExchange>(exchanges);
+    }
+
+    private PairState getPairState(String cryptoCurrency, String fiatCurrency) {
+        String key = cryptoCurrency + "_" + fiatCurrency;
+        PairState state = pairs.get(key);
+        if (state == null) {
+            final PairState created = new PairState(cryptoCurrency, fiatCurrency, exchanges.size());
+            state = pairs.putIfAbsent(key, created);
+            if (state == null) {
+                state = created;
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        refresh(created);
+                    }
+                });
+                startRefreshing();
+            }
+        }
+        state.usedAt = System.currentTimeMillis();
+        return state;
+    }
+
+    private synchronized void startRefreshing() {
+        if (refreshing == null) {
+            refreshing = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, REFRESH_PERIOD, REFRESH_PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopRefreshingWhenIdle() {
+        if (pairs.isEmpty() && refreshing != null) {
+            refreshing.cancel(false);
+            refreshing = null;
+        }
+    }
+
+    private void refresh() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, PairState> entry : pairs.entrySet()) {
+            if (now - entry.getValue().usedAt > IDLE_AFTER) {
+                pairs.remove(entry.getKey(), entry.getValue());
+            } else {
+                refresh(entry.getValue());
+            }
+        }
+        stopRefreshingWhenIdle();
+    }
+
+    private void refresh(PairState state) {
+        int size = exchanges.size();
+        OrderBookSnapshot[] orderBooks = new OrderBookSnapshot[size];
+        BigDecimal[] cryptoBalances = new BigDecimal[size];
+        BigDecimal[] fiatBalances = new BigDecimal[size];
+        for (int i = 0; i < size; i++) {
+            XChangeExchange exchange = exchanges.get(i);
+            if (!exchange.isAvailable() || !exchange.getCryptoCurrencies().contains(state.cryptoCurrency) || !exchange.getFiatCurrencies().contains(state.fiatCurrency)) {
+                continue;
+            }
+            try {
+                orderBooks[i] = exchange.getOrderBookSnapshot(state.cryptoCurrency, state.fiatCurrency);
+            } catch (IOException e) {
+                log.warn("Router failed to get {}_{} order book of {}: {}", state.cryptoCurrency, state.fiatCurrency, exchange.getClass().getSimpleName(), e.toString());
+            } catch (Throwable e) {
+                log.error("Router failed to get {}_{} order book of {}", state.cryptoCurrency, state.fiatCurrency, exchange.getClass().getSimpleName(), e);
+            }
+            cryptoBalances[i] = exchange.getCryptoBalance(state.cryptoCurrency);
+            fiatBalances[i] = exchange.getFiatBalance(state.fiatCurrency);
+        }
+        state.orderBooks = orderBooks;
+        state.cryptoBalances = cryptoBalances;
+        state.fiatBalances = fiatBalances;
+        state.refreshedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Splits the amount among exchanges.
+     * @return crypto amount per exchange index, empty when no exchange can take the order
+     */
+    Map<Integer, BigDecimal> route(boolean purchase, BigDecimal amount, String cryptoCurrency, String fiatCurrency) {
+        PairState state = getPairState(cryptoCurrency, fiatCurrency);
+        Map<Integer, BigDecimal> allocation = new LinkedHashMap<Integer, BigDecimal>();
+        if (System.currentTimeMillis() - state.refreshedAt > STALE_AFTER) {
+            return allocation;
+        }
+        OrderBookSnapshot[] orderBooks = state.orderBooks;
+        BigDecimal[] balances = purchase ? state.fiatBalances : state.cryptoBalances;
+
+        int size = exchanges.size();
+        BigDecimal[] allocated = new BigDecimal[size];
+        BigDecimal[] allocatedPrice = new BigDecimal[size];
+        for (int i = 0; i < size; i++) {
+            allocated[i] = BigDecimal.ZERO;
+            allocatedPrice[i] = BigDecimal.ZERO;
+        }
+
+        BigDecimal part = amount.divide(new BigDecimal(SPLIT_PARTS), OrderBookSnapshot.SCALE, RoundingMode.DOWN);
+        BigDecimal remaining = amount;
+        while (remaining.signum() > 0) {
+            BigDecimal next = part.signum() > 0 && remaining.compareTo(part.add(part)) >= 0 ? part : remaining;
+            int best = -1;
+            BigDecimal bestIncrement = null;
+            BigDecimal bestPrice = null;
+            for (int i = 0; i < size; i++) {
+                if (orderBooks[i] == null || balances[i] == null) {
+                    continue;
+                }
+                BigDecimal total = allocated[i].add(next);
+                BigDecimal price = purchase ? orderBooks[i].getBuyPrice(total) : orderBooks[i].getSellPrice(total);
+                if (price == null) {
+                    continue; //book is not deep enough
+                }
+                if (balances[i].compareTo(purchase ? price : total) < 0) {
+                    continue;
+                }
+                BigDecimal increment = price.subtract(allocatedPrice[i]);
+                if (bestIncrement == null || (purchase ? increment.compareTo(bestIncrement) < 0 : increment.compareTo(bestIncrement) > 0)) {
+                    best = i;
+                    bestIncrement = increment;
+                    bestPrice = price;
+                }
+            }
+            if (best < 0) {
+                allocation.clear();
+                return allocation;
+            }
+            allocated[best] = allocated[best].add(next);
+            allocatedPrice[best] = bestPrice;
+            remaining = remaining.subtract(next);
+        }
+        for (int i = 0; i < size; i++) {
+            if (allocated[i].signum() > 0) {
+                allocation.put(i, allocated[i]);
+            }
+        }
+        return allocation;
+    }
+
+    private ITask createTask(boolean purchase, BigDecimal amount, String cryptoCurrency, String fiatCurrency, String description) {
+        Map<Integer, BigDecimal> allocation = route(purchase, amount, cryptoCurrency, fiatCurrency);
+        if (allocation.isEmpty()) {
+            int fallback = getFirstExchangeTrading(cryptoCurrency, fiatCurrency);
+            if (fallback < 0) {
+                log.error("Router has no exchange trading {} for {}", cryptoCurrency, fiatCurrency);
+                return null;
+            }
+            log.info("Router has no usable quotes for {} {} {}, using {}", purchase ? "purchase" : "sell", amount, cryptoCurrency, exchanges.get(fallback).getClass().getSimpleName());
+            allocation.put(fallback, amount);
+        }
+        List<ITask> tasks = new ArrayList<ITask>();
+        List<String> descriptions = new ArrayList<String>();
+        for (Map.Entry<Integer, BigDecimal> entry : allocation.entrySet()) {
+            XChangeExchange exchange = exchanges.get(entry.getKey());
+            log.info("Router {} {} {} on {}", purchase ? "purchases" : "sells", entry.getValue(), cryptoCurrency, exchange.getClass().getSimpleName());
+            ITask task = purchase
+                ? exchange.createPurchaseCoinsTask(entry.getValue(), cryptoCurrency, fiatCurrency, description)
+                : exchange.createSellCoinsTask(entry.getValue(), cryptoCurrency, fiatCurrency, description);
+            if (task == null) {
+                return null;
+            }
+            tasks.add(task);
+            descriptions.add(entry.getValue() + " " + cryptoCurrency + " on " + exchange.getClass().getSimpleName());
+        }
+        return new RoutedTask(tasks, descriptions);
+    }
+
+    /**
+     * @return index of the first available exchange trading the pair, first one trading it when none is available, -1 when none trades it
+     */
+    private int getFirstExchangeTrading(String cryptoCurrency, String fiatCurrency) {
+        int result = -1;
+        for (int i = exchanges.size() - 1; i >= 0; i--) {
+            XChangeExchange exchange = exchanges.get(i);
+            if (exchange.getCryptoCurrencies().contains(cryptoCurrency) && exchange.getFiatCurrencies().contains(fiatCurrency)) {
+                if (exchange.isAvailable() || result < 0 || !exchanges.get(result).isAvailable()) {
+                    result = i;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs orders placed on individual exchanges concurrently. Succeeds when all of them succeed, result is
+     * comma separated list of results of the orders. When any part fails the whole task fails, as only part of
+     * the amount was traded; parts that succeeded are logged for reconciliation, they are not reverted here.
+     */
+    class RoutedTask implements ITask {
+        private final List<ITask> tasks;
+        private final List<String> descriptions;
+        private ListenableFuture<List<Object>> future;
+        private String result;
+        private boolean finished;
+
+        RoutedTask(List<ITask> tasks, List<String> descriptions) {
+            this.tasks = tasks;
+            this.descriptions = descriptions;
+        }
+
+        @Override
+        public boolean onCreate() {
+            List<ListenableFuture<Object>> futures = new ArrayList<ListenableFuture<Object>>();
+            for (ITask task : tasks) {
+                futures.add(TaskScheduler.getInstance().submit(task));
+            }
+            future = Futures.successfulAsList(futures);
+            return true;
+        }
+
+        @Override
+        public boolean onDoStep() {
+            if (!future.isDone()) {
+                return false;
+            }
+            try {
+                StringBuilder sb = new StringBuilder();
+                boolean failed = false;
+                List<Object> results = future.get();
+                for (int i = 0; i < results.size(); i++) {
+                    Object taskResult = results.get(i);
+                    if (taskResult == null) {
+                        log.error("Routed order part failed: {}", descriptions.get(i));
+                        failed = true;
+                        continue;
+                    }
+                    sb.append(sb.length() == 0 ? "" : ",").append(taskResult);
+                }
+                if (!failed) {
+                    result = sb.toString();
+                } else if (sb.length() > 0) {
+                    log.error("Routed order failed partially, parts already traded: {}", sb);
+                } else {
+                    log.error("Routed order failed on all exchanges");
+                }
+            } catch (Exception e) {
+                log.error("Routed order failed", e);
+            }
+            finished = true;
+            return result != null;
+        }
+
+        @Override
+        public void onFinish() {
+            //parts still running are left to finish, cancelling them could leave orders placed but unreported
+            log.debug("Routed task finished.");
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public Object getResult() {
+            return result;
+        }
+
+        @Override
+        public boolean isFailed() {
+            return finished && result == null;
+        }
+
+        @Override
+        public long getShortestTimeForNexStepInvocation() {
+            return 1000;
+        }
+    }
+
+    @Override
+    public ITask createPurchaseCoinsTask(BigDecimal amount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
+        return createTask(true, amount, cryptoCurrency, fiatCurrencyToUse, description);
+    }
+
+    @Override
+    public ITask createSellCoinsTask(BigDecimal amount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
+        return createTask(false, amount, cryptoCurrency, fiatCurrencyToUse, description);
+    }
+
+    @Override
+    public String purchaseCoins(BigDecimal amount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
+        ITask task = createPurchaseCoinsTask(amount, cryptoCurrency, fiatCurrencyToUse, description);
+        if (task == null) {
+            return null;
+        }
+        return (String) TaskScheduler.getInstance().execute(task, SYNCHRONOUS_TRADE_TIMEOUT);
+    }
+
+    @Override
+    public String sellCoins(BigDecimal cryptoAmount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
+        ITask task = createSellCoinsTask(cryptoAmount, cryptoCurrency, fiatCurrencyToUse, description);
+        if (task == null) {
+            return null;
+        }
+        return (String) TaskScheduler.getInstance().execute(task, SYNCHRONOUS_TRADE_TIMEOUT);
+    }
+
+    @Override
+    public Set<String> getCryptoCurrencies() {
+        Set<String> result = new HashSet<String>();
+        for (XChangeExchange exchange : exchanges) {
+            result.addAll(exchange.getCryptoCurrencies());
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> getFiatCurrencies() {
+        Set<String> result = new HashSet<String>();
+        for (XChangeExchange exchange : exchanges) {
+            result.addAll(exchange.getFiatCurrencies());
+        }
+        return result;
+    }
+
+    @Override
+    public String getPreferredFiatCurrency() {
+        return exchanges.get(0).getPreferredFiatCurrency();
+    }
+
+    @Override
+    public BigDecimal getCryptoBalance(String cryptoCurrency) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (XChangeExchange exchange : exchanges) {
+            BigDecimal balance = exchange.getCryptoBalance(cryptoCurrency);
+            if (balance != null) {
+                total = total.add(balance);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public BigDecimal getFiatBalance(String fiatCurrency) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (XChangeExchange exchange : exchanges) {
+            BigDecimal balance = exchange.getFiatBalance(fiatCurrency);
+            if (balance != null) {
+                total = total.add(balance);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Withdraws from the first exchange that has enough coins.
+     */
+    @Override
+    public String sendCoins(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        for (XChangeExchange exchange : exchanges) {
+            BigDecimal balance = exchange.getCryptoBalance(cryptoCurrency);
+            if (balance != null && balance.compareTo(amount) >= 0) {
+                return exchange.sendCoins(destinationAddress, amount, cryptoCurrency, description);
+            }
+        }
+        log.error("No exchange has {} {} to send", amount, cryptoCurrency);
+        return null;
+    }
+
+    @Override
+    public String getDepositAddress(String cryptoCurrency) {
+        return exchanges.get(0).getDepositAddress(cryptoCurrency);
+    }
+}
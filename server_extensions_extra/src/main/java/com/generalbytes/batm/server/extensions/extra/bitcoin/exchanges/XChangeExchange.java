@@ -23,16 +23,20 @@ package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges;
 import com.generalbytes.batm.server.extensions.IExchangeAdvanced;
 import com.generalbytes.batm.server.extensions.IRateSourceAdvanced;
 import com.generalbytes.batm.server.extensions.ITask;
+import com.generalbytes.batm.server.extensions.extra.common.http.UpstreamGuard;
+import com.generalbytes.batm.server.extensions.extra.common.sources.RateHistory;
+import com.generalbytes.batm.server.extensions.extra.common.tasks.TaskScheduler;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.ExchangeFactory;
 import org.knowm.xchange.ExchangeSpecification;
 import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dto.Order;
-import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.account.AccountInfo;
+import org.knowm.xchange.dto.account.Wallet;
 import org.knowm.xchange.dto.marketdata.Ticker;
 import org.knowm.xchange.dto.trade.LimitOrder;
 import org.knowm.xchange.dto.trade.MarketOrder;
@@ -48,10 +52,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -68,18 +71,170 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
                 .build();
     }
 
+    private static final long ORDER_BOOK_TTL_MILLIS = 3 * 1000; //3sec
+    private final Cache<String, OrderBookSnapshot> orderBookCache = CacheBuilder
+            .newBuilder()
+            .expireAfterWrite(ORDER_BOOK_TTL_MILLIS, TimeUnit.MILLISECONDS)
+            .build();
+
+    private static final long SYNCHRONOUS_TRADE_TIMEOUT = 35 * 1000; //35sec
+
+    private final ConcurrentMap<String, LiveOrderBook> liveOrderBooks = new ConcurrentHashMap<String, LiveOrderBook>();
+    private volatile IOrderBookUpdateSource orderBookUpdateSource;
+    private final ConcurrentMap<String, BigDecimal> rollingVolumes = new ConcurrentHashMap<String, BigDecimal>();
+
     private final Exchange exchange;
     private final String name;
     private final Logger log;
-    private final RateLimiter rateLimiter;
+    private final UpstreamGuard guard;
+    private final QuoteEngine quoteEngine;
+    private final OpenOrdersPoller openOrdersPoller;
+    private final AccountInfoCache accountInfoCache;
+
+    private volatile PollingMarketDataService marketDataService;
+    private volatile PollingAccountService accountService;
+    private volatile PollingTradeService tradeService;
 
 
     public XChangeExchange(ExchangeSpecification specification, String preferredFiatCurrency) {
         exchange = ExchangeFactory.INSTANCE.createExchange(specification);
         name = exchange.getExchangeSpecification().getExchangeName();
         log = LoggerFactory.getLogger("batm.master.exchange." + name);
-        rateLimiter = RateLimiter.create(getAllowedCallsPerSecond());
+        guard = createGuard(exchange.getExchangeSpecification(), getAllowedCallsPerSecond());
         this.preferredFiatCurrency = preferredFiatCurrency;
+        quoteEngine = new QuoteEngine(name, new IOrderBookSource() {
+            @Override
+            public OrderBookSnapshot getOrderBook(String cryptoCurrency, String fiatCurrency) throws IOException {
+                return getOrderBookSnapshot(cryptoCurrency, fiatCurrency);
+            }
+        });
+        openOrdersPoller = new OpenOrdersPoller(name, new Callable<OpenOrders>() {
+            @Override
+            public OpenOrders call() throws Exception {
+                return getTradeService().getOpenOrders();
+            }
+        });
+        accountInfoCache = new AccountInfoCache(new Callable<AccountInfo>() {
+            @Override
+            public AccountInfo call() throws Exception {
+                return getAccountService().getAccountInfo();
+            }
+        });
+    }
+
+    /**
+     * @return engine with precomputed quotes for standard amounts and fiat denominations
+     */
+    public QuoteEngine getQuoteEngine() {
+        return quoteEngine;
+    }
+
+    /**
+     * Sets streaming feed of order book updates. Pairs are subscribed on first price request and
+     * pricing then reads the live book, falling back to REST only while the live book is resyncing.
+     * @param orderBookUpdateSource
+     */
+    public void setOrderBookUpdateSource(IOrderBookUpdateSource orderBookUpdateSource) {
+        this.orderBookUpdateSource = orderBookUpdateSource;
+        for (LiveOrderBook liveOrderBook : liveOrderBooks.values()) {
+            liveOrderBook.stop();
+        }
+        liveOrderBooks.clear();
+    }
+
+    private LiveOrderBook getLiveOrderBook(String cryptoCurrency, String fiatCurrency) {
+        IOrderBookUpdateSource source = orderBookUpdateSource;
+        if (source == null) {
+            return null;
+        }
+        String key = buildCacheKey(cryptoCurrency, fiatCurrency);
+        LiveOrderBook liveOrderBook = liveOrderBooks.get(key);
+        if (liveOrderBook == null) {
+            LiveOrderBook created = new LiveOrderBook(source, cryptoCurrency, fiatCurrency);
+            liveOrderBook = liveOrderBooks.putIfAbsent(key, created);
+            if (liveOrderBook == null) {
+                log.info("{} exchange subscribing to order book updates of {}", name, key);
+                created.start();
+                liveOrderBook = created;
+            }
+        }
+        return liveOrderBook;
+    }
+
+    /**
+     * Returns live order book when streaming feed is set and in sync, otherwise order book
+     * downloaded at most {@link #ORDER_BOOK_TTL_MILLIS} ago. Concurrent callers asking for the
+     * same pair wait for a single download.
+     */
+    protected OrderBookSnapshot getOrderBookSnapshot(final String cryptoCurrency, final String fiatCurrency) throws IOException {
+        LiveOrderBook liveOrderBook = getLiveOrderBook(cryptoCurrency, fiatCurrency);
+        if (liveOrderBook != null) {
+            OrderBookSnapshot snapshot = liveOrderBook.getSnapshot();
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+        try {
+            return orderBookCache.get(buildCacheKey(cryptoCurrency, fiatCurrency), new Callable<OrderBookSnapshot>() {
+                @Override
+                public OrderBookSnapshot call() throws Exception {
+                    CurrencyPair currencyPair = createCurrencyPair(cryptoCurrency, fiatCurrency);
+                    return OrderBookSnapshot.create(getMarketDataService().getOrderBook(currencyPair));
+                }
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static UpstreamGuard createGuard(ExchangeSpecification specification, double callsPerSecond) {
+        if (specification.getSslUri() != null) {
+            return UpstreamGuard.forUrl(specification.getSslUri(), callsPerSecond);
+        }
+        if (specification.getHost() != null) {
+            return UpstreamGuard.forHost(specification.getHost(), callsPerSecond);
+        }
+        return UpstreamGuard.forHost(specification.getExchangeName(), callsPerSecond);
+    }
+
+    /**
+     * Services are wrapped once so that every call is throttled and fails fast when the exchange is down.
+     */
+    protected PollingMarketDataService getMarketDataService() {
+        PollingMarketDataService service = marketDataService;
+        if (service == null) {
+            service = guard.wrap(PollingMarketDataService.class, exchange.getPollingMarketDataService());
+            marketDataService = service;
+        }
+        return service;
+    }
+
+    protected PollingAccountService getAccountService() {
+        PollingAccountService service = accountService;
+        if (service == null) {
+            service = guard.wrap(PollingAccountService.class, exchange.getPollingAccountService());
+            accountService = service;
+        }
+        return service;
+    }
+
+    protected PollingTradeService getTradeService() {
+        PollingTradeService service = tradeService;
+        if (service == null) {
+            service = guard.wrap(PollingTradeService.class, exchange.getPollingTradeService());
+            tradeService = service;
+        }
+        return service;
+    }
+
+    /**
+     * @return false while calls to the exchange fail and are not being made
+     */
+    public boolean isAvailable() {
+        return guard.isAvailable();
     }
 
     protected abstract boolean isWithdrawSuccessful(String result);
@@ -101,6 +256,22 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
         return true;
     }
 
+    /**
+     * Ticker volume is traded within last 24 hours, its growth since the previous ticker of the pair is
+     * the best available estimate of volume traded in between.
+     * @return null when unknown (first ticker or rolling volume dropped)
+     */
+    private BigDecimal getIntervalVolume(String key, BigDecimal rollingVolume) {
+        if (rollingVolume == null) {
+            return null;
+        }
+        BigDecimal previous = rollingVolumes.put(key, rollingVolume);
+        if (previous == null || rollingVolume.compareTo(previous) < 0) {
+            return null;
+        }
+        return rollingVolume.subtract(previous);
+    }
+
     class RateCaller implements Callable<BigDecimal> {
         private final String key;
 
@@ -115,9 +286,10 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
             String fiatCurrency = keyParts[1];
 
             try {
-                return exchange.getPollingMarketDataService()
-                        .getTicker(new CurrencyPair(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency), fiatCurrency))
-                        .getLast();
+                Ticker ticker = getMarketDataService()
+                        .getTicker(createCurrencyPair(cryptoCurrency, fiatCurrency));
+                RateHistory.record(cryptoCurrency, fiatCurrency, ticker.getLast(), getIntervalVolume(key, ticker.getVolume()));
+                return ticker.getLast();
             } catch (ExchangeException e) {
                 e.printStackTrace();
             } catch (NotAvailableFromExchangeException e) {
@@ -158,10 +330,7 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
             return BigDecimal.ZERO;
         }
         try {
-            BigDecimal balance = exchange.getPollingAccountService()
-                    .getAccountInfo()
-                    .getWallet(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency))
-                    .getBalance(Currency.getInstance(cryptoCurrency)).getAvailable();
+            BigDecimal balance = getAvailableBalance(accountInfoCache.get(), translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency), cryptoCurrency);
             log.debug("{} exchange balance request: {} = {}", name, cryptoCurrency, balance);
             return balance;
         } catch (IOException e) {
@@ -177,10 +346,7 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
             return BigDecimal.ZERO;
         }
         try {
-            BigDecimal balance = exchange.getPollingAccountService()
-                    .getAccountInfo()
-                    .getWallet(fiatCurrency)
-                    .getBalance(Currency.getInstance(fiatCurrency)).getAvailable();
+            BigDecimal balance = getAvailableBalance(accountInfoCache.get(), translateFiatCurrencySymbolToExchangeSpecificSymbol(fiatCurrency), translateFiatCurrencySymbolToExchangeSpecificSymbol(fiatCurrency));
             log.debug("{} exchange balance request: {} = {}", name, fiatCurrency, balance);
             return balance;
         } catch (IOException e) {
@@ -197,7 +363,7 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
 
         log.info("{} exchange withdrawing {} {} to {}", name, amount, cryptoCurrency, destinationAddress);
 
-        PollingAccountService accountService = exchange.getPollingAccountService();
+        PollingAccountService accountService = getAccountService();
         try {
             String result = accountService.withdrawFunds(Currency.getInstance(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency)), amount, destinationAddress);
             if (isWithdrawSuccessful(result)) {
@@ -208,80 +374,18 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
             }
         } catch (IOException e) {
             log.error("{} exchange withdrawal failed", name, e);
+        } finally {
+            accountInfoCache.invalidate();
         }
         return null;
     }
 
     public String purchaseCoins(BigDecimal amount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
-        if (cryptoCurrency == null || fiatCurrencyToUse == null) {
+        ITask task = createPurchaseCoinsTask(amount, cryptoCurrency, fiatCurrencyToUse, description);
+        if (task == null) {
             return null;
         }
-        if (!isFiatCurrencySupported(fiatCurrencyToUse)) {
-            return null;
-        }
-        if (!isCryptoCurrencySupported(cryptoCurrency)){
-            return null;
-        }
-
-        PollingAccountService accountService = exchange.getPollingAccountService();
-        PollingMarketDataService marketService = exchange.getPollingMarketDataService();
-        PollingTradeService tradeService = exchange.getPollingTradeService();
-
-        try {
-            log.debug("AccountInfo as String: {}", accountService.getAccountInfo());
-
-            CurrencyPair currencyPair = new CurrencyPair(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency), fiatCurrencyToUse);
-
-            Ticker ticker = marketService.getTicker(currencyPair);
-
-            LimitOrder order = new LimitOrder.Builder(Order.OrderType.BID, currencyPair)
-                    .limitPrice(ticker.getAsk())
-                    .tradableAmount(amount)
-                    .build();
-            log.debug("limitOrder = {}", order);
-
-            String orderId = tradeService.placeLimitOrder(order);
-            log.debug("orderId = {} {}", orderId, order);
-
-            try {
-                Thread.sleep(2000); //give exchange 2 seconds to reflect open order in order book
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            // get open orders
-            log.debug("Open orders:");
-            boolean orderProcessed = false;
-            int numberOfChecks = 0;
-            while (!orderProcessed && numberOfChecks < 10) {
-                boolean orderFound = false;
-                OpenOrders openOrders = tradeService.getOpenOrders();
-                for (LimitOrder openOrder : openOrders.getOpenOrders()) {
-                    log.debug("openOrder = {}", openOrder);
-                    if (orderId.equals(openOrder.getId())) {
-                        orderFound = true;
-                        break;
-                    }
-                }
-                if (orderFound) {
-                    log.debug("Waiting for order to be processed.");
-                    try {
-                        Thread.sleep(3000); //don't get your ip address banned
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                } else {
-                    orderProcessed = true;
-                }
-                numberOfChecks++;
-            }
-            if (orderProcessed) {
-                return orderId;
-            }
-        } catch (IOException e) {
-            log.error(String.format("{} exchange purchase coins failed", name), e);
-        }
-        return null;
+        return (String) TaskScheduler.getInstance().execute(task, SYNCHRONOUS_TRADE_TIMEOUT);
     }
 
     @Override
@@ -307,7 +411,7 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
             return null;
         }
 
-        PollingAccountService accountService = exchange.getPollingAccountService();
+        PollingAccountService accountService = getAccountService();
         try {
             return accountService.requestDepositAddress(Currency.getInstance(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency)));
         } catch (IOException e) {
@@ -318,72 +422,11 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
 
     @Override
     public String sellCoins(BigDecimal cryptoAmount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
-        if (cryptoCurrency == null || fiatCurrencyToUse == null) {
-            return null;
-        }
-
-        if (!isCryptoCurrencySupported(cryptoCurrency)) {
+        ITask task = createSellCoinsTask(cryptoAmount, cryptoCurrency, fiatCurrencyToUse, description);
+        if (task == null) {
             return null;
         }
-
-        if (!isFiatCurrencySupported(fiatCurrencyToUse)) {
-            return null;
-        }
-
-        log.info("Calling {} exchange (sell {} {})", name, cryptoAmount, cryptoCurrency);
-        PollingAccountService accountService = exchange.getPollingAccountService();
-        PollingTradeService tradeService = exchange.getPollingTradeService();
-
-        try {
-            log.debug("AccountInfo as String: {}", accountService.getAccountInfo());
-
-            CurrencyPair currencyPair = new CurrencyPair(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency), fiatCurrencyToUse);
-
-            MarketOrder order = new MarketOrder(Order.OrderType.ASK, cryptoAmount, currencyPair);
-            log.debug("marketOrder = {}", order);
-
-            String orderId = tradeService.placeMarketOrder(order);
-            log.debug("orderId = {} {}", orderId, order);
-
-            try {
-                Thread.sleep(2000); //give exchange 2 seconds to reflect open order in order book
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            // get open orders
-            log.debug("Open orders:");
-            boolean orderProcessed = false;
-            int numberOfChecks = 0;
-            while (!orderProcessed && numberOfChecks < 10) {
-                boolean orderFound = false;
-                OpenOrders openOrders = tradeService.getOpenOrders();
-                for (LimitOrder openOrder : openOrders.getOpenOrders()) {
-                    log.debug("openOrder = {}", openOrder);
-                    if (orderId.equals(openOrder.getId())) {
-                        orderFound = true;
-                        break;
-                    }
-                }
-                if (orderFound) {
-                    log.debug("Waiting for order to be processed.");
-                    try {
-                        Thread.sleep(3000); //don't get your ip address banned
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }else{
-                    orderProcessed = true;
-                }
-                numberOfChecks++;
-            }
-            if (orderProcessed) {
-                return orderId;
-            }
-        } catch (IOException e) {
-            log.error("{} exchange sell coins failed", name, e);
-        }
-        return null;
+        return (String) TaskScheduler.getInstance().execute(task, SYNCHRONOUS_TRADE_TIMEOUT);
     }
 
     @Override
@@ -429,36 +472,16 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
         if (!isFiatCurrencySupported(fiatCurrency)) {
             return null;
         }
+        BigDecimal quote = quoteEngine.getBuyPrice(cryptoCurrency, fiatCurrency, cryptoAmount);
+        if (quote != null) {
+            return quote;
+        }
 
-        rateLimiter.acquire();
-        PollingMarketDataService marketDataService = exchange.getPollingMarketDataService();
         try {
-            CurrencyPair currencyPair = new CurrencyPair(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency), fiatCurrency);
-            OrderBook orderBook = marketDataService.getOrderBook(currencyPair);
-            List<LimitOrder> asks = orderBook.getAsks();
-            BigDecimal targetAmount = cryptoAmount;
-            BigDecimal asksTotal = BigDecimal.ZERO;
-            BigDecimal tradableLimit = null;
-            Collections.sort(asks, new Comparator<LimitOrder>() {
-                @Override
-                public int compare(LimitOrder lhs, LimitOrder rhs) {
-                    return lhs.getLimitPrice().compareTo(rhs.getLimitPrice());
-                }
-            });
-
-//            log.debug("Selected asks:");
-            for (LimitOrder ask : asks) {
-//                log.debug("ask = " + ask);
-                asksTotal = asksTotal.add(ask.getTradableAmount());
-                if (targetAmount.compareTo(asksTotal) <= 0) {
-                    tradableLimit = ask.getLimitPrice();
-                    break;
-                }
-            }
-
-            if (tradableLimit != null) {
-                log.debug("Called {} exchange for BUY rate: {}:{} = {}", name, cryptoCurrency, fiatCurrency, tradableLimit);
-                return tradableLimit.multiply(cryptoAmount);
+            BigDecimal price = getOrderBookSnapshot(cryptoCurrency, fiatCurrency).getBuyPrice(cryptoAmount);
+            if (price != null) {
+                log.debug("Called {} exchange for BUY price: {} {}:{} = {}", name, cryptoAmount, cryptoCurrency, fiatCurrency, price);
+                return price;
             }
         } catch (Throwable e) {
             log.error("{} exchange failed to calculate buy price", name, e);
@@ -477,37 +500,16 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
         if(!isFiatCurrencySupported(fiatCurrency)) {
             return null;
         }
+        BigDecimal quote = quoteEngine.getSellPrice(cryptoCurrency, fiatCurrency, cryptoAmount);
+        if (quote != null) {
+            return quote;
+        }
 
-        rateLimiter.acquire();
-        PollingMarketDataService marketDataService = exchange.getPollingMarketDataService();
         try {
-            CurrencyPair currencyPair = new CurrencyPair(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency), fiatCurrency);
-
-            OrderBook orderBook = marketDataService.getOrderBook(currencyPair);
-            List<LimitOrder> bids = orderBook.getBids();
-
-            BigDecimal targetAmount = cryptoAmount;
-            BigDecimal bidsTotal = BigDecimal.ZERO;
-            BigDecimal tradableLimit = null;
-
-            Collections.sort(bids, new Comparator<LimitOrder>() {
-                @Override
-                public int compare(LimitOrder lhs, LimitOrder rhs) {
-                    return rhs.getLimitPrice().compareTo(lhs.getLimitPrice());
-                }
-            });
-
-            for (LimitOrder bid : bids) {
-                bidsTotal = bidsTotal.add(bid.getTradableAmount());
-                if (targetAmount.compareTo(bidsTotal) <= 0) {
-                    tradableLimit = bid.getLimitPrice();
-                    break;
-                }
-            }
-
-            if (tradableLimit != null) {
-                log.debug("Called {} exchange for SELL rate: {}:{} = {}", name, cryptoCurrency, fiatCurrency, tradableLimit);
-                return tradableLimit.multiply(cryptoAmount);
+            BigDecimal price = getOrderBookSnapshot(cryptoCurrency, fiatCurrency).getSellPrice(cryptoAmount);
+            if (price != null) {
+                log.debug("Called {} exchange for SELL price: {} {}:{} = {}", name, cryptoAmount, cryptoCurrency, fiatCurrency, price);
+                return price;
             }
         } catch (Throwable e) {
             log.error("{} exchange failed to calculate sell price", name, e);
@@ -527,6 +529,8 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
         private String orderId;
         private String result;
         private boolean finished;
+        private long checkTillTime;
+        private ListenableFuture<String> orderClosed;
 
         PurchaseCoinsTask(BigDecimal amount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
             this.amount = amount;
@@ -538,30 +542,37 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
         @Override
         public boolean onCreate() {
             log.debug("{} exchange purchase {} {}", name, amount, cryptoCurrency);
-            PollingAccountService accountService = exchange.getPollingAccountService();
-            PollingMarketDataService marketService = exchange.getPollingMarketDataService();
-            PollingTradeService tradeService = exchange.getPollingTradeService();
+            PollingMarketDataService marketService = getMarketDataService();
+            PollingTradeService tradeService = getTradeService();
 
             try {
-                log.debug("AccountInfo as String: {}", accountService.getAccountInfo());
+                log.debug("AccountInfo as String: {}", accountInfoCache.getIfPresent());
+
+                CurrencyPair currencyPair = createCurrencyPair(cryptoCurrency, fiatCurrencyToUse);
 
-                CurrencyPair currencyPair = new CurrencyPair(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency), fiatCurrencyToUse);
+                if (isMarketOrderSupportedForPurchase()) {
+                    MarketOrder order = new MarketOrder(Order.OrderType.BID, amount, currencyPair);
+                    log.debug("marketOrder = {}", order);
 
-                Ticker ticker = marketService.getTicker(currencyPair);
-                LimitOrder order = new LimitOrder.Builder(Order.OrderType.BID, currencyPair)
-                        .limitPrice(ticker.getAsk())
-                        .tradableAmount(amount)
-                        .build();
+                    orderId = tradeService.placeMarketOrder(order);
+                    log.debug("orderId = {} {}", orderId, order);
+                } else {
+                    Ticker ticker = marketService.getTicker(currencyPair);
+                    LimitOrder order = new LimitOrder.Builder(Order.OrderType.BID, currencyPair)
+                            .limitPrice(ticker.getAsk())
+                            .tradableAmount(amount)
+                            .build();
 
-                log.debug("limitOrder = {}", order);
+                    log.debug("limitOrder = {}", order);
 
-                orderId = tradeService.placeLimitOrder(order);
-                log.debug("orderId = {} {}", orderId, order);
+                    orderId = tradeService.placeLimitOrder(order);
+                    log.debug("orderId = {} {}", orderId, order);
+                }
+                accountInfoCache.invalidate();
 
-                try {
-                    Thread.sleep(2000); //give exchange 2 seconds to reflect open order in order book
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                checkTillTime = System.currentTimeMillis() + MAXIMUM_TIME_TO_WAIT_FOR_ORDER_TO_FINISH;
+                if (orderId != null) {
+                    orderClosed = openOrdersPoller.watch(orderId);
                 }
             } catch (IOException e) {
                 e.printStackTrace();
@@ -578,38 +589,21 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
                 result = "Skipped";
                 return false;
             }
-            PollingTradeService tradeService = exchange.getPollingTradeService();
-            // get open orders
             boolean orderProcessed = false;
-            long checkTillTime = System.currentTimeMillis() + MAXIMUM_TIME_TO_WAIT_FOR_ORDER_TO_FINISH;
             if (System.currentTimeMillis() > checkTillTime) {
                 log.debug("Giving up on waiting for trade {} to complete", orderId);
                 finished = true;
                 return false;
             }
 
-            log.debug("Open orders:");
-            boolean orderFound = false;
-            try {
-                OpenOrders openOrders = tradeService.getOpenOrders();
-                for (LimitOrder openOrder : openOrders.getOpenOrders()) {
-                    log.debug("openOrder = {}", openOrder);
-                    if (orderId.equals(openOrder.getId())) {
-                        orderFound = true;
-                        break;
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-            if (orderFound) {
-                log.debug("Waiting for order to be processed.");
-            } else {
+            if (orderClosed.isDone()) {
                 orderProcessed = true;
+            } else {
+                log.debug("Waiting for order to be processed.");
             }
 
             if (orderProcessed) {
+                accountInfoCache.invalidate();
                 result = orderId;
                 finished = true;
             }
@@ -634,12 +628,15 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
 
         @Override
         public void onFinish() {
+            if (orderClosed != null) {
+                orderClosed.cancel(false); //stop watching when we gave up
+            }
             log.debug("Purchase task finished.");
         }
 
         @Override
         public long getShortestTimeForNexStepInvocation() {
-            return 5 * 1000; //it doesn't make sense to run step sooner than after 5 seconds
+            return 5 * 1000; //open orders are polled by shared poller, step only reads its result
         }
     }
 
@@ -654,6 +651,8 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
         private String orderId;
         private String result;
         private boolean finished;
+        private long checkTillTime;
+        private ListenableFuture<String> orderClosed;
 
         SellCoinsTask(BigDecimal cryptoAmount, String cryptoCurrency, String fiatCurrencyToUse, String description) {
             this.cryptoAmount = cryptoAmount;
@@ -665,24 +664,35 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
         @Override
         public boolean onCreate() {
             log.info("Calling {} exchange (sell {} {})", name, cryptoAmount, cryptoCurrency);
-            PollingAccountService accountService = exchange.getPollingAccountService();
-            PollingTradeService tradeService = exchange.getPollingTradeService();
+            PollingTradeService tradeService = getTradeService();
 
             try {
-                log.debug("AccountInfo as String: {}", accountService.getAccountInfo());
+                log.debug("AccountInfo as String: {}", accountInfoCache.getIfPresent());
 
-                CurrencyPair currencyPair = new CurrencyPair(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency), fiatCurrencyToUse);
+                CurrencyPair currencyPair = createCurrencyPair(cryptoCurrency, fiatCurrencyToUse);
 
-                MarketOrder order = new MarketOrder(Order.OrderType.ASK, cryptoAmount, currencyPair);
-                log.debug("marketOrder = {}", order);
+                if (isMarketOrderSupported()) {
+                    MarketOrder order = new MarketOrder(Order.OrderType.ASK, cryptoAmount, currencyPair);
+                    log.debug("marketOrder = {}", order);
 
-                orderId = tradeService.placeMarketOrder(order);
-                log.debug("orderId = {} {}", orderId, order);
+                    orderId = tradeService.placeMarketOrder(order);
+                    log.debug("orderId = {} {}", orderId, order);
+                } else {
+                    Ticker ticker = getMarketDataService().getTicker(currencyPair);
+                    LimitOrder order = new LimitOrder.Builder(Order.OrderType.ASK, currencyPair)
+                            .limitPrice(ticker.getBid())
+                            .tradableAmount(cryptoAmount)
+                            .build();
+                    log.debug("limitOrder = {}", order);
+
+                    orderId = tradeService.placeLimitOrder(order);
+                    log.debug("orderId = {} {}", orderId, order);
+                }
+                accountInfoCache.invalidate();
 
-                try {
-                    Thread.sleep(2000); //give exchange 2 seconds to reflect open order in order book
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                checkTillTime = System.currentTimeMillis() + MAXIMUM_TIME_TO_WAIT_FOR_ORDER_TO_FINISH;
+                if (orderId != null) {
+                    orderClosed = openOrdersPoller.watch(orderId);
                 }
             } catch (IOException e) {
                 e.printStackTrace();
@@ -701,38 +711,21 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
                 result = "Skipped";
                 return false;
             }
-            PollingTradeService tradeService = exchange.getPollingTradeService();
-            // get open orders
             boolean orderProcessed = false;
-            long checkTillTime = System.currentTimeMillis() + MAXIMUM_TIME_TO_WAIT_FOR_ORDER_TO_FINISH;
             if (System.currentTimeMillis() > checkTillTime) {
                 log.debug("Giving up on waiting for trade {} to complete", orderId);
                 finished = true;
                 return false;
             }
 
-            log.debug("Open orders:");
-            boolean orderFound = false;
-            try {
-                OpenOrders openOrders = tradeService.getOpenOrders();
-                for (LimitOrder openOrder : openOrders.getOpenOrders()) {
-                    log.debug("openOrder = {}", openOrder);
-                    if (orderId.equals(openOrder.getId())) {
-                        orderFound = true;
-                        break;
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-            if (orderFound) {
-                log.debug("Waiting for order to be processed.");
-            }else{
+            if (orderClosed.isDone()) {
                 orderProcessed = true;
+            } else {
+                log.debug("Waiting for order to be processed.");
             }
 
             if (orderProcessed) {
+                accountInfoCache.invalidate();
                 result = orderId;
                 finished = true;
             }
@@ -757,12 +750,15 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
 
         @Override
         public void onFinish() {
+            if (orderClosed != null) {
+                orderClosed.cancel(false); //stop watching when we gave up
+            }
             log.debug("Sell task finished.");
         }
 
         @Override
         public long getShortestTimeForNexStepInvocation() {
-            return 5 * 1000; //it doesn't make sense to run step sooner than after 5 seconds
+            return 5 * 1000; //open orders are polled by shared poller, step only reads its result
         }
     }
 
@@ -774,4 +770,40 @@ public abstract class XChangeExchange implements IExchangeAdvanced, IRateSourceA
     protected String translateCryptoCurrencySymbolToExchangeSpecificSymbol(String from) {
         return from;
     }
+
+    /**
+     * Exchanges without fiat markets trade against a stable coin (USD as USDT etc).
+     */
+    protected String translateFiatCurrencySymbolToExchangeSpecificSymbol(String from) {
+        return from;
+    }
+
+    /**
+     * @return false when sells have to be placed as limit orders at the best bid
+     */
+    protected boolean isMarketOrderSupported() {
+        return true;
+    }
+
+    /**
+     * @return true when purchases have to be placed as market orders instead of limit orders at the best ask
+     */
+    protected boolean isMarketOrderSupportedForPurchase() {
+        return false;
+    }
+
+    private CurrencyPair createCurrencyPair(String cryptoCurrency, String fiatCurrency) {
+        return new CurrencyPair(translateCryptoCurrencySymbolToExchangeSpecificSymbol(cryptoCurrency), translateFiatCurrencySymbolToExchangeSpecificSymbol(fiatCurrency));
+    }
+
+    /**
+     * Some exchanges report one wallet per currency, others one wallet with all balances.
+     */
+    private static BigDecimal getAvailableBalance(AccountInfo accountInfo, String walletId, String currency) {
+        Wallet wallet = accountInfo.getWallets().size() == 1 ? accountInfo.getWallet() : accountInfo.getWallet(walletId);
+        if (wallet == null) {
+            return BigDecimal.ZERO;
+        }
+        return wallet.getBalance(Currency.getInstance(currency)).getAvailable();
+    }
 }
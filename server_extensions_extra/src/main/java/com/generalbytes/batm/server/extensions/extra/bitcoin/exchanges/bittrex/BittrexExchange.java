@@ -0,0 +1,88 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.bittrex;
+
+import com.generalbytes.batm.server.extensions.ICurrencies;
+import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.XChangeExchange;
+import org.knowm.xchange.ExchangeSpecification;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Bittrex has no fiat markets, USD is traded as USDT.
+ */
+public class BittrexExchange extends XChangeExchange {
+
+    public BittrexExchange() {
+        super(getDefaultSpecification(), ICurrencies.USD);
+    }
+
+    public BittrexExchange(String apiKey, String apiSecret) {
+        super(getSpecification(apiKey, apiSecret), ICurrencies.USD);
+    }
+
+    private static ExchangeSpecification getDefaultSpecification() {
+        return new org.knowm.xchange.bittrex.v1.BittrexExchange().getDefaultExchangeSpecification();
+    }
+
+    private static ExchangeSpecification getSpecification(String apiKey, String apiSecret) {
+        ExchangeSpecification spec = getDefaultSpecification();
+        spec.setApiKey(apiKey);
+        spec.setSecretKey(apiSecret);
+        return spec;
+    }
+
+    @Override
+    public Set<String> getCryptoCurrencies() {
+        Set<String> cryptoCurrencies = new HashSet<String>();
+        cryptoCurrencies.add(ICurrencies.BTC);
+        cryptoCurrencies.add(ICurrencies.ETH);
+        return cryptoCurrencies;
+    }
+
+    @Override
+    public Set<String> getFiatCurrencies() {
+        Set<String> fiatCurrencies = new HashSet<String>();
+        fiatCurrencies.add(ICurrencies.USD);
+        return fiatCurrencies;
+    }
+
+    @Override
+    protected boolean isWithdrawSuccessful(String result) {
+        return result != null; //uuid of the withdrawal
+    }
+
+    @Override
+    protected double getAllowedCallsPerSecond() {
+        return 2;
+    }
+
+    @Override
+    protected String translateFiatCurrencySymbolToExchangeSpecificSymbol(String from) {
+        if (ICurrencies.USD.equalsIgnoreCase(from)) {
+            return "USDT";
+        }
+        return from;
+    }
+
+    @Override
+    protected boolean isMarketOrderSupported() {
+        return false; //market orders were disabled by Bittrex
+    }
+}
@@ -22,6 +22,7 @@ package com.generalbytes.batm.server.extensions.extra.bitcoin.sources.bity;
 import com.generalbytes.batm.server.extensions.ICurrencies;
 import com.generalbytes.batm.server.extensions.IRateSourceAdvanced;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.sources.bity.dto.RateInfo;
+import com.generalbytes.batm.server.extensions.extra.common.http.UpstreamGuard;
 import si.mazi.rescu.RestProxyFactory;
 
 import java.math.BigDecimal;
@@ -31,7 +32,7 @@ import java.util.Set;
 public class BityRateSource implements IRateSourceAdvanced{
     private final IBity api;
     public BityRateSource() {
-        api = RestProxyFactory.createProxy(IBity.class, "https://bity.com");
+        api = UpstreamGuard.wrap(IBity.class, RestProxyFactory.createProxy(IBity.class, "https://bity.com"), "https://bity.com");
     }
 
     @Override
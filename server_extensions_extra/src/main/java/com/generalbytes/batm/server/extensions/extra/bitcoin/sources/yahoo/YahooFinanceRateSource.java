@@ -20,14 +20,11 @@ package com.generalbytes.batm.server.extensions.extra.bitcoin.sources.yahoo;
 
 import com.generalbytes.batm.server.extensions.ICurrencies;
 import com.generalbytes.batm.server.extensions.IRateSource;
+import com.generalbytes.batm.server.extensions.extra.common.http.AsyncHttpFetcher;
+import com.generalbytes.batm.server.extensions.extra.common.sources.RateHistory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.math.BigDecimal;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.*;
 
 
@@ -127,7 +124,7 @@ public class YahooFinanceRateSource implements IRateSource{
             Map<String,BigDecimal> results = new HashMap<String, BigDecimal>();
             final String symbols = sb.toString();
             String url = "https://download.finance.yahoo.com/d/quotes.csv?e=.csv&f=sl1d1t1&s=" + symbols;
-            String result = getHTML(url);
+            String result = AsyncHttpFetcher.getInstance().getSync(url);
             if (result != null) {
                 result = result.replace("\"","");
                 StringTokenizer lines = new StringTokenizer(result,"\n");
@@ -138,6 +135,7 @@ public class YahooFinanceRateSource implements IRateSource{
                     symbol = symbol.substring(fromCurrency.length(),symbol.length()-"=X".length());
                     BigDecimal rate = new BigDecimal(st.nextToken());
                     results.put(symbol,rate);
+                    RateHistory.record(fromCurrency, symbol, rate);
                     log.info("Obtained exchange rate " + fromCurrency +">" + symbol + " = " + rate );
                 }
             }
@@ -150,30 +148,6 @@ public class YahooFinanceRateSource implements IRateSource{
         return null;
     }
 
-    private static String getHTML(String urlToRead) {
-        URL url;
-        HttpURLConnection conn;
-        BufferedReader rd;
-        String line;
-        String result = "";
-        try {
-            url = new URL(urlToRead);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestProperty("Accept-Charset", "UTF-8");
-            conn.setRequestMethod("GET");
-            rd = new BufferedReader(new InputStreamReader(conn.getInputStream(),"UTF-8"));
-            while ((line = rd.readLine()) != null) {
-                result += line +"\n";
-            }
-            rd.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return result;
-    }
-
     @Override
     public Set<String> getCryptoCurrencies() {
         Set<String> result = new HashSet<String>();
@@ -19,6 +19,12 @@ package com.generalbytes.batm.server.extensions.extra.bitcoin.wallets.bitcore;
 
 import com.generalbytes.batm.server.extensions.ICurrencies;
 import com.generalbytes.batm.server.extensions.IWallet;
+import com.generalbytes.batm.server.extensions.extra.common.amounts.CoinAmount;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.AddressPool;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.AsyncWalletAdapter;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.IAccountWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.IAsyncWallet;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import si.mazi.rescu.ClientConfig;
@@ -29,21 +35,23 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
-public class BitcoreWallet implements IWallet {
+public class BitcoreWallet implements IWallet, IAccountWallet, IAsyncWallet {
     private static final Logger log = LoggerFactory.getLogger(BitcoreWallet.class);
-    private static final BigDecimal coin = BigDecimal.valueOf(Math.pow(10, 8));
     private static final Integer readTimeout = 90 * 1000; //90 seconds
 
     private final String apiKey;
+    private final String accountId;
     private final IBitcoreProxyAPI api;
+    private final AddressPool addressPool;
 
     private BigDecimal fromSatoshis(long amount) {
-        return BigDecimal.valueOf(amount).divide(coin);
+        return CoinAmount.ofSatoshis(amount).toBigDecimal();
     }
 
     private long toSatoshis(BigDecimal amount) {
-        return amount.multiply(coin).longValue();
+        return CoinAmount.of(amount, CoinAmount.SATOSHI_DECIMALS).getUnits();
     }
 
     public BitcoreWallet(String apiKey, String proxyUrl) {
@@ -51,10 +59,20 @@ public class BitcoreWallet implements IWallet {
         ClientConfig config = new ClientConfig();
         config.setHttpReadTimeout(readTimeout);
         api = RestProxyFactory.createProxy(IBitcoreProxyAPI.class, proxyUrl, config);
+        accountId = ICurrencies.BTC + "-bitcore-" + proxyUrl;
+        addressPool = AddressPool.get(accountId, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return api.getAddress(ICurrencies.BTC);
+            }
+        });
     }
 
     @Override
     public String getCryptoAddress(String cryptoCurrency) {
+        if (ICurrencies.BTC.equalsIgnoreCase(cryptoCurrency)) {
+            return addressPool.next();
+        }
         try {
             return api.getAddress(cryptoCurrency);
         } catch (HttpStatusIOException e) {
@@ -89,6 +107,27 @@ public class BitcoreWallet implements IWallet {
         return null;
     }
 
+    @Override
+    public ListenableFuture<String> sendCoinsAsync(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        return AsyncWalletAdapter.blocking(this).sendCoinsAsync(destinationAddress, amount, cryptoCurrency, description);
+    }
+
+    /**
+     * Completes without waiting for the wallet unless its address pool is empty.
+     */
+    @Override
+    public ListenableFuture<String> getCryptoAddressAsync(String cryptoCurrency) {
+        if (ICurrencies.BTC.equalsIgnoreCase(cryptoCurrency)) {
+            return addressPool.nextAsync();
+        }
+        return AsyncWalletAdapter.blocking(this).getCryptoAddressAsync(cryptoCurrency);
+    }
+
+    @Override
+    public ListenableFuture<BigDecimal> getCryptoBalanceAsync(String cryptoCurrency) {
+        return AsyncWalletAdapter.blocking(this).getCryptoBalanceAsync(cryptoCurrency);
+    }
+
     @Override
     public Set<String> getCryptoCurrencies() {
         HashSet<String> s = new HashSet<String>();
@@ -100,4 +139,9 @@ public class BitcoreWallet implements IWallet {
     public String getPreferredCryptoCurrency() {
         return ICurrencies.BTC;
     }
+
+    @Override
+    public String getAccountId() {
+        return accountId;
+    }
 }
@@ -0,0 +1,201 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.amounts;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Exact crypto amount kept as a whole number of the coin's smallest units (satoshis, NQT).
+ *
+ * Amounts coming from the server as BigDecimal are converted once, at the wallet boundary, and stay
+ * exact from there on: {@link #toString()} prints the plain decimal value, so an amount passed as an RPC
+ * parameter is serialized as an exact JSON number instead of going through double. Values parsed from
+ * daemon JSON responses (doubles) are rounded to the nearest unit, which is exact for any real balance.
+ */
+public final class CoinAmount extends Number implements Comparable<CoinAmount> {
+    private static final long serialVersionUID = 1L;
+
+    public static final int SATOSHI_DECIMALS = 8;
+    public static final int NQT_DECIMALS = 8;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long units;
+    private final int decimals;
+
+    private CoinAmount(long units, int decimals) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported number of decimals: " + decimals);
+        }
+        this.units = units;
+        this.decimals = decimals;
+    }
+
+    public static CoinAmount ofUnits(long units, int decimals) {
+        return new CoinAmount(units, decimals);
+    }
+
+    public static CoinAmount ofSatoshis(long satoshis) {
+        return new CoinAmount(satoshis, SATOSHI_DECIMALS);
+    }
+
+    /**
+     * @param amount
+     * @param decimals
+     * @return amount truncated to the smallest unit, so a payout never sends more than requested
+     * @throws ArithmeticException when the amount doesn't fit to long
+     */
+    public static CoinAmount of(BigDecimal amount, int decimals) {
+        return new CoinAmount(amount.setScale(decimals, RoundingMode.DOWN).unscaledValue().longValueExact(), decimals);
+    }
+
+    /**
+     * Converts number parsed from JSON, integral numbers are taken as whole coins.
+     * @param value
+     * @param decimals
+     * @return
+     */
+    public static CoinAmount of(Number value, int decimals) {
+        if (value instanceof CoinAmount && ((CoinAmount) value).decimals == decimals) {
+            return (CoinAmount) value;
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            long coins = value.longValue();
+            long factor = POWERS_OF_TEN[decimals];
+            if (Math.abs(coins) > Long.MAX_VALUE / factor) {
+                throw new ArithmeticException("Amount out of range: " + coins);
+            }
+            return new CoinAmount(coins * factor, decimals);
+        } else if (value instanceof Double || value instanceof Float) {
+            double scaled = value.doubleValue() * POWERS_OF_TEN[decimals];
+            if (Double.isNaN(scaled) || Math.abs(scaled) >= Long.MAX_VALUE) {
+                throw new ArithmeticException("Amount out of range: " + value);
+            }
+            return new CoinAmount(Math.round(scaled), decimals);
+        }
+        return of(value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString()), decimals);
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+
+    public boolean isPositive() {
+        return units > 0;
+    }
+
+    public CoinAmount add(CoinAmount other) {
+        checkDecimals(other);
+        long sum = units + other.units;
+        if (((units ^ sum) & (other.units ^ sum)) < 0) {
+            throw new ArithmeticException("Amount overflow");
+        }
+        return new CoinAmount(sum, decimals);
+    }
+
+    public CoinAmount subtract(CoinAmount other) {
+        checkDecimals(other);
+        return add(new CoinAmount(-other.units, decimals));
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(units, decimals);
+    }
+
+    @Override
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    @Override
+    public long longValue() {
+        return units / POWERS_OF_TEN[decimals];
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return (double) units / POWERS_OF_TEN[decimals];
+    }
+
+    @Override
+    public int compareTo(CoinAmount other) {
+        checkDecimals(other);
+        return units < other.units ? -1 : (units == other.units ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CoinAmount)) {
+            return false;
+        }
+        CoinAmount other = (CoinAmount) o;
+        return units == other.units && decimals == other.decimals;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (units ^ (units >>> 32)) + decimals;
+    }
+
+    /**
+     * @return plain decimal value with all decimals, i.e. 0.00100000
+     */
+    @Override
+    public String toString() {
+        if (decimals == 0) {
+            return Long.toString(units);
+        }
+        long factor = POWERS_OF_TEN[decimals];
+        long whole = units / factor;
+        long fraction = Math.abs(units % factor);
+        StringBuilder sb = new StringBuilder(21 + decimals);
+        if (units < 0 && whole == 0) {
+            sb.append('-');
+        }
+        sb.append(whole).append('.');
+        String fractionDigits = Long.toString(fraction);
+        for (int i = fractionDigits.length(); i < decimals; i++) {
+            sb.append('0');
+        }
+        return sb.append(fractionDigits).toString();
+    }
+
+    private void checkDecimals(CoinAmount other) {
+        if (decimals != other.decimals) {
+            throw new IllegalArgumentException("Amounts of different units: " + decimals + " and " + other.decimals + " decimals");
+        }
+    }
+}
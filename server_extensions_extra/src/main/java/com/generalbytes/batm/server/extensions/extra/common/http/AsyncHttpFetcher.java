@@ -0,0 +1,250 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.http;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared HTTP fetch layer used by rate sources.
+ *
+ * All requests of all rate sources run on one small fixed pool, so the number of threads
+ * does not depend on the number of configured sources and callers can fire requests for
+ * several upstreams at once and only wait for the results. Connections are reused through
+ * the JDK keep-alive cache, which requires every response body to be read to the end;
+ * the fetcher always drains the body before returning. Requests go through the
+ * {@link UpstreamGuard} of their host.
+ */
+public class AsyncHttpFetcher {
+    private static final Logger log = LoggerFactory.getLogger(AsyncHttpFetcher.class);
+
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10 * 1000; //10sec
+    private static final int DEFAULT_READ_TIMEOUT = 30 * 1000; //30sec
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final String THREAD_NAME_PREFIX = "http-fetcher-";
+
+    private static final AsyncHttpFetcher instance = new AsyncHttpFetcher(DEFAULT_THREADS, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+
+    private static final IResponseHandler<String> STRING_HANDLER = new IResponseHandler<String>() {
+        @Override
+        public String handle(InputStream in) throws IOException {
+            return readFully(in);
+        }
+    };
+
+    private final ListeningExecutorService executor;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public AsyncHttpFetcher(int threads, int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+            .setNameFormat(THREAD_NAME_PREFIX + "%d")
+            .setDaemon(true)
+            .build()));
+    }
+
+    public static AsyncHttpFetcher getInstance() {
+        return instance;
+    }
+
+    public ListenableFuture<String> get(String url) {
+        return get(url, null, STRING_HANDLER);
+    }
+
+    public <T> ListenableFuture<T> get(String url, IResponseHandler<T> handler) {
+        return get(url, null, handler);
+    }
+
+    public <T> ListenableFuture<T> get(String url, Map<String, String> headers, IResponseHandler<T> handler) {
+        return get(url, headers, handler, null, false);
+    }
+
+    /**
+     * @param sslSocketFactory used for https connections instead of the default one, i.e. for hosts requiring specific TLS settings
+     * @param ignoreHttpErrorCodes when true bodies of error responses are passed to the handler as well
+     */
+    public <T> ListenableFuture<T> get(final String url, final Map<String, String> headers, final IResponseHandler<T> handler, final SSLSocketFactory sslSocketFactory, final boolean ignoreHttpErrorCodes) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return fetch(url, headers, handler, sslSocketFactory, ignoreHttpErrorCodes);
+            }
+        });
+    }
+
+    /**
+     * Fetches all urls concurrently. Failed requests are represented by null in the result list.
+     * @param urls
+     * @return
+     */
+    public ListenableFuture<List<String>> getAll(List<String> urls) {
+        List<ListenableFuture<String>> futures = new ArrayList<ListenableFuture<String>>(urls.size());
+        for (String url : urls) {
+            futures.add(get(url));
+        }
+        return Futures.successfulAsList(futures);
+    }
+
+    /**
+     * Runs blocking upstream call (i.e. rescu proxy method) on the shared fetch pool
+     * so it can be issued concurrently with other upstream requests.
+     * @param call
+     * @return
+     */
+    public <T> ListenableFuture<T> submit(Callable<T> call) {
+        return executor.submit(call);
+    }
+
+    /**
+     * Convenience method for callers that need the result right away.
+     * @param url
+     * @return response body or null when request failed
+     */
+    public String getSync(String url) {
+        if (Thread.currentThread().getName().startsWith(THREAD_NAME_PREFIX)) {
+            //already running on the fetch pool, waiting for another pool task could starve the pool
+            try {
+                return fetch(url, null, STRING_HANDLER, null, false);
+            } catch (IOException e) {
+                log.error("Request failed: " + url, e);
+                return null;
+            }
+        }
+        return getResult(get(url), url);
+    }
+
+    public <T> T getResult(ListenableFuture<T> future, String description) {
+        try {
+            return future.get(connectTimeout + readTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Request failed: " + description, e);
+            future.cancel(true);
+        }
+        return null;
+    }
+
+    private <T> T fetch(final String urlToRead, final Map<String, String> headers, final IResponseHandler<T> handler, final SSLSocketFactory sslSocketFactory, final boolean ignoreHttpErrorCodes) throws IOException {
+        try {
+            return UpstreamGuard.forUrl(urlToRead).call(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    return doFetch(urlToRead, headers, handler, sslSocketFactory, ignoreHttpErrorCodes);
+                }
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private <T> T doFetch(String urlToRead, Map<String, String> headers, IResponseHandler<T> handler, SSLSocketFactory sslSocketFactory, boolean ignoreHttpErrorCodes) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(urlToRead).openConnection();
+        if (sslSocketFactory != null && conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setSSLSocketFactory(sslSocketFactory);
+        }
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        conn.setRequestMethod("GET");
+        conn.setRequestProperty("Accept-Charset", "UTF-8");
+        conn.setRequestProperty("Connection", "keep-alive");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                conn.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
+        int responseCode = conn.getResponseCode();
+        if (responseCode >= 400 && ignoreHttpErrorCodes && conn.getErrorStream() != null) {
+            InputStream err = conn.getErrorStream();
+            try {
+                T result = handler.handle(err);
+                drain(err);
+                return result;
+            } finally {
+                err.close();
+            }
+        }
+        if (responseCode >= 400) {
+            InputStream err = conn.getErrorStream();
+            String body = null;
+            if (err != null) {
+                try {
+                    body = readFully(err);
+                } finally {
+                    err.close();
+                }
+            }
+            throw new IOException("HTTP " + responseCode + " from " + conn.getURL().getHost() + ": " + body);
+        }
+
+        InputStream in = conn.getInputStream();
+        try {
+            T result = handler.handle(in);
+            drain(in);
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        Reader reader = new InputStreamReader(in, "UTF-8");
+        StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, read);
+        }
+        return sb.toString();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (in.read(buffer) != -1) {
+            //connection can be returned to keep-alive cache only when the body was fully consumed
+        }
+    }
+}
@@ -1,5 +1,6 @@
-package com.generalbytes.batm.server.extensions.extra.worldcoin.sources.cd;
+package com.generalbytes.batm.server.extensions.extra.common.http;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 
 import java.io.IOException;
@@ -32,6 +33,20 @@ public class CompatSSLSocketFactory extends SSLSocketFactory {
         mDelegate = delegate;
     }
 
+    /**
+     * @return factory wrapping default TLS context, null when the context can't be initialized
+     */
+    public static SSLSocketFactory create() {
+        try {
+            SSLContext sslcontext = SSLContext.getInstance("TLS");
+            sslcontext.init(null, null, null);
+            return new CompatSSLSocketFactory(sslcontext.getSocketFactory());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /** List of cipher suites needed for compatibility with the server. */
     private static final String[] COMPAT_CIPHER_SUITES = {
             "TLS_RSA_WITH_AES_128_CBC_SHA256",
@@ -0,0 +1,33 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface IResponseHandler<T> {
+    /**
+     * Called with the response body stream. Implementations should consume the stream
+     * rather than buffer it so large bodies are processed while they are being received.
+     * The stream is closed by the caller.
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public T handle(InputStream in) throws IOException;
+}
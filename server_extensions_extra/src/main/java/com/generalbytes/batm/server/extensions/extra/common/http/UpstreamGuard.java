@@ -0,0 +1,240 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.http;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rate limiter and circuit breaker shared by all callers of one upstream host.
+ *
+ * Every rate source and exchange obtains the guard of its host, so bursts from several
+ * sources hitting the same API are throttled together. After {@link #FAILURE_THRESHOLD}
+ * consecutive failures the circuit opens and calls fail immediately with
+ * {@link UpstreamUnavailableException} instead of waiting for a socket timeout. When
+ * {@link #OPEN_DURATION} passes a single probe call is let through (half-open state);
+ * its success closes the circuit, its failure keeps it open for another period.
+ */
+public class UpstreamGuard {
+    private static final Logger log = LoggerFactory.getLogger(UpstreamGuard.class);
+
+    public static final double DEFAULT_CALLS_PER_SECOND = 5;
+    public static final int FAILURE_THRESHOLD = 5;
+    public static final long OPEN_DURATION = 30 * 1000; //30sec
+
+    private static final ConcurrentMap<String, UpstreamGuard> guards = new ConcurrentHashMap<String, UpstreamGuard>();
+
+    private enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String host;
+    private final RateLimiter rateLimiter;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    private UpstreamGuard(String host, double callsPerSecond) {
+        this.host = host;
+        this.rateLimiter = RateLimiter.create(callsPerSecond);
+    }
+
+    public static UpstreamGuard forHost(String host) {
+        return forHost(host, DEFAULT_CALLS_PER_SECOND);
+    }
+
+    /**
+     * Returns guard of given host. When several callers ask for different call rates
+     * the most restrictive one is used.
+     * @param host
+     * @param callsPerSecond
+     * @return
+     */
+    public static UpstreamGuard forHost(String host, double callsPerSecond) {
+        String key = host == null ? "" : host.toLowerCase();
+        UpstreamGuard guard = guards.get(key);
+        if (guard == null) {
+            UpstreamGuard created = new UpstreamGuard(key, callsPerSecond);
+            guard = guards.putIfAbsent(key, created);
+            if (guard == null) {
+                return created;
+            }
+        }
+        synchronized (guard.rateLimiter) {
+            if (callsPerSecond < guard.rateLimiter.getRate()) {
+                guard.rateLimiter.setRate(callsPerSecond);
+            }
+        }
+        return guard;
+    }
+
+    public static UpstreamGuard forUrl(String url) {
+        return forUrl(url, DEFAULT_CALLS_PER_SECOND);
+    }
+
+    public static UpstreamGuard forUrl(String url, double callsPerSecond) {
+        String host = null;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            log.warn("Cannot parse host of " + url);
+        }
+        return forHost(host == null ? url : host, callsPerSecond);
+    }
+
+    /**
+     * Wraps service interface (rescu proxy, XChange polling service) so that every call
+     * of its methods goes through the guard of given url's host.
+     */
+    public static <I> I wrap(Class<I> serviceInterface, I service, String url) {
+        return forUrl(url).wrap(serviceInterface, service);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <I> I wrap(Class<I> serviceInterface, final I service) {
+        if (service == null) {
+            return null;
+        }
+        return (I) Proxy.newProxyInstance(serviceInterface.getClassLoader(), new Class<?>[]{serviceInterface}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(service, args);
+                }
+                try {
+                    return call(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            try {
+                                return method.invoke(service, args);
+                            } catch (InvocationTargetException e) {
+                                //rescu proxies throw IOException even from methods not declaring it
+                                Throwable cause = unwrap(e);
+                                if (cause instanceof Exception) {
+                                    throw (Exception) cause;
+                                }
+                                if (cause instanceof Error) {
+                                    throw (Error) cause;
+                                }
+                                throw e;
+                            }
+                        }
+                    });
+                } catch (UpstreamUnavailableException e) {
+                    if (declares(method, e)) {
+                        throw e;
+                    }
+                    throw new UndeclaredThrowableException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Executes call through the guard. Only I/O errors count as failures of the upstream, also when
+     * they come wrapped in {@link UndeclaredThrowableException} or {@link InvocationTargetException}.
+     * @throws UpstreamUnavailableException when circuit is open
+     */
+    public <T> T call(Callable<T> call) throws Exception {
+        acquirePermission();
+        rateLimiter.acquire();
+        try {
+            T result = call.call();
+            onSuccess();
+            return result;
+        } catch (Exception e) {
+            if (unwrap(e) instanceof IOException) {
+                onFailure(e);
+            } else {
+                //upstream responded, only with an error (i.e. insufficient funds)
+                onSuccess();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return false when calls would currently fail fast
+     */
+    public synchronized boolean isAvailable() {
+        return state == State.CLOSED || (state == State.OPEN && System.currentTimeMillis() - openedAt >= OPEN_DURATION);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    private synchronized void acquirePermission() throws UpstreamUnavailableException {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= OPEN_DURATION) {
+            log.info("Probing upstream {}", host);
+            state = State.HALF_OPEN;
+            return;
+        }
+        throw new UpstreamUnavailableException("Upstream " + host + " is unavailable");
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Upstream {} is available again", host);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    private synchronized void onFailure(Exception e) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            if (state != State.OPEN) {
+                log.warn("Upstream {} failed {} times, calls will fail fast for {} ms. Last error: {}", host, consecutiveFailures, OPEN_DURATION, e.toString());
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        Throwable result = e;
+        while ((result instanceof UndeclaredThrowableException || result instanceof InvocationTargetException) && result.getCause() != null) {
+            result = result.getCause();
+        }
+        return result;
+    }
+
+    private static boolean declares(Method method, Exception e) {
+        for (Class<?> exceptionType : method.getExceptionTypes()) {
+            if (exceptionType.isInstance(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -15,17 +15,17 @@
  * Web      :  http://www.generalbytes.com
  *
  ************************************************************************************/
-package com.generalbytes.batm.server.extensions.extra.groestlcoin.sources;
+package com.generalbytes.batm.server.extensions.extra.common.http;
 
-import javax.ws.rs.GET;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import java.io.IOException;
 
-@Path("/api/v1/")
-@Produces(MediaType.APPLICATION_JSON)
-public interface IGroestlcoinTickerRateAPI {
-    @GET
-    @Path("ticker")
-    GroestlcoinTickerResponse getTicker();
+/**
+ * Thrown instead of calling an upstream whose circuit is open.
+ */
+public class UpstreamUnavailableException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public UpstreamUnavailableException(String message) {
+        super(message);
+    }
 }
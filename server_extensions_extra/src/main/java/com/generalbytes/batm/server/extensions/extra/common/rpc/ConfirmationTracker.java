@@ -0,0 +1,221 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+import com.azazar.bitcoin.jsonrpcclient.BitcoinException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks confirmations of wallet transactions of one daemon.
+ *
+ * The daemon is asked only for its best block hash between blocks. When a new block arrives, confirmations
+ * of mined transactions are computed from their block height, only transactions not mined yet are looked up
+ * (in one batch), so the cost per block doesn't grow with the number of tracked transactions. When the new
+ * tip doesn't extend the previous one (reorganization or several blocks between polls) all transactions are
+ * looked up again.
+ */
+public class ConfirmationTracker {
+    private static final Logger log = LoggerFactory.getLogger(ConfirmationTracker.class);
+
+    public static final long DEFAULT_POLL_INTERVAL = 10 * 1000; //10sec
+
+    private static final int THREADS = 4;
+
+    //polls of one daemon never overlap, so an unreachable daemon holds one thread and others keep being polled
+    private static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(THREADS, new ThreadFactoryBuilder()
+        .setNameFormat("confirmation-tracker-%d")
+        .setDaemon(true)
+        .build());
+
+    private final PooledRPCClient client;
+    private final long pollInterval;
+
+    private final Map<String, Transaction> transactions = new HashMap<String, Transaction>(); //guarded by this
+    private ScheduledFuture<?> polling; //guarded by this
+    private boolean added; //guarded by this
+    private String bestBlockHash; //accessed by polling thread only
+
+    private static class Transaction {
+        private final int requiredConfirmations;
+        private final IConfirmationListener listener;
+        private long height = -1; //height of the block containing the transaction
+        private int confirmations = Integer.MIN_VALUE; //not known yet
+
+        private Transaction(int requiredConfirmations, IConfirmationListener listener) {
+            this.requiredConfirmations = requiredConfirmations;
+            this.listener = listener;
+        }
+    }
+
+    private static class Change {
+        private final String txId;
+        private final Transaction transaction;
+        private final int confirmations;
+        private final boolean finished;
+
+        private Change(String txId, Transaction transaction, int confirmations, boolean finished) {
+            this.txId = txId;
+            this.transaction = transaction;
+            this.confirmations = confirmations;
+            this.finished = finished;
+        }
+    }
+
+    public ConfirmationTracker(PooledRPCClient client) {
+        this(client, DEFAULT_POLL_INTERVAL);
+    }
+
+    public ConfirmationTracker(PooledRPCClient client, long pollInterval) {
+        this.client = client;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Starts tracking the transaction. The daemon is polled only while some transactions are tracked.
+     * @param txId id of a transaction of the daemon's wallet
+     * @param requiredConfirmations tracking stops when the transaction reaches this number of confirmations
+     * @param listener called from the tracker's thread, must not block
+     */
+    public synchronized void track(String txId, int requiredConfirmations, IConfirmationListener listener) {
+        transactions.put(txId, new Transaction(requiredConfirmations, listener));
+        added = true;
+        if (polling == null) {
+            polling = executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    poll();
+                }
+            }, 0, pollInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void untrack(String txId) {
+        transactions.remove(txId);
+        stopWhenIdle();
+    }
+
+    /**
+     * @return last known number of confirmations of a tracked transaction, null when it is not tracked or not checked yet
+     */
+    public synchronized Integer getConfirmations(String txId) {
+        Transaction transaction = transactions.get(txId);
+        if (transaction == null || transaction.confirmations == Integer.MIN_VALUE) {
+            return null;
+        }
+        return transaction.confirmations;
+    }
+
+    private void stopWhenIdle() {
+        if (transactions.isEmpty() && polling != null) {
+            polling.cancel(false);
+            polling = null;
+        }
+    }
+
+    private void poll() {
+        try {
+            String tip = (String) client.query("getbestblockhash");
+            boolean lookupAdded;
+            synchronized (this) {
+                lookupAdded = added;
+                added = false;
+            }
+            if (tip.equals(bestBlockHash) && !lookupAdded) {
+                return;
+            }
+            update(tip);
+        } catch (BitcoinException e) {
+            log.warn("Cannot check confirmations at " + client.getTransport().getUrl().getHost() + ": " + e.getMessage());
+            synchronized (this) {
+                added = true; //make sure newly tracked transactions are looked up on next poll
+            }
+        } catch (Throwable e) {
+            log.error("Confirmation tracking failed", e); //exception would stop the polling
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void update(String tip) throws BitcoinException {
+        Map<String, Object> block = (Map<String, Object>) client.query("getblock", tip);
+        long tipHeight = ((Number) block.get("height")).longValue();
+        boolean extended = tip.equals(bestBlockHash) || (bestBlockHash != null && bestBlockHash.equals(block.get("previousblockhash")));
+
+        RPCBatch batch = client.batch();
+        Map<String, Integer> calls = new HashMap<String, Integer>();
+        synchronized (this) {
+            for (Map.Entry<String, Transaction> entry : transactions.entrySet()) {
+                if (!extended || entry.getValue().height < 0) {
+                    calls.put(entry.getKey(), batch.add("gettransaction", entry.getKey()));
+                }
+            }
+        }
+        batch.execute();
+
+        List<Change> changes = new ArrayList<Change>();
+        synchronized (this) {
+            for (Iterator<Map.Entry<String, Transaction>> it = transactions.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Transaction> entry = it.next();
+                Transaction transaction = entry.getValue();
+                Integer call = calls.get(entry.getKey());
+                Integer lookedUp = null;
+                if (call == null && transaction.height < 0) {
+                    continue; //tracked during this update, looked up on next poll
+                }
+                if (call != null) {
+                    Object result = batch.getResultOrNull(call);
+                    if (!(result instanceof Map) || !(((Map<String, Object>) result).get("confirmations") instanceof Number)) {
+                        continue; //not known to the wallet (yet), try again with next block
+                    }
+                    lookedUp = ((Number) ((Map<String, Object>) result).get("confirmations")).intValue();
+                    transaction.height = lookedUp > 0 ? tipHeight - lookedUp + 1 : -1;
+                }
+                int confirmations = transaction.height < 0 ? lookedUp : (int) (tipHeight - transaction.height + 1);
+                if (confirmations != transaction.confirmations) {
+                    transaction.confirmations = confirmations;
+                    boolean finished = confirmations >= transaction.requiredConfirmations;
+                    if (finished) {
+                        it.remove();
+                    }
+                    changes.add(new Change(entry.getKey(), transaction, confirmations, finished));
+                }
+            }
+            stopWhenIdle();
+        }
+        bestBlockHash = tip;
+
+        for (Change change : changes) {
+            try {
+                change.transaction.listener.confirmationsChanged(change.txId, change.confirmations, change.finished);
+            } catch (Throwable e) {
+                log.error("Confirmation listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+public interface IConfirmationListener {
+    /**
+     * Called by {@link ConfirmationTracker} when number of confirmations of a tracked transaction changed.
+     * @param txId
+     * @param confirmations 0 while the transaction is not mined, negative when it conflicts with a mined transaction
+     * @param finished true when the transaction reached required confirmations and is no longer tracked
+     */
+    public void confirmationsChanged(String txId, int confirmations, boolean finished);
+}
@@ -15,17 +15,18 @@
  * Web      :  http://www.generalbytes.com
  *
  ************************************************************************************/
-package com.generalbytes.batm.server.extensions.extra.maxcoin.sources;
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
 
-import javax.ws.rs.GET;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.IAccountWallet;
 
-@Path("/")
-@Produces(MediaType.APPLICATION_JSON)
-public interface IMaxcoinTickerRateAPI {
-    @GET
-    @Path("stats.php")
-    MaxcoinTickerResponse getTicker();
+/**
+ * Wallet backed by an account of a coin daemon reachable over JSON-RPC.
+ */
+public interface IRPCWallet extends IAccountWallet {
+    /**
+     * @return client of the daemon, shared with other wallets of the same daemon
+     */
+    public PooledRPCClient getRPCClient();
+
+    public String getAccountName();
 }
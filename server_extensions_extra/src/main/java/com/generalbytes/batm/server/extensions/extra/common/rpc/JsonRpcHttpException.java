@@ -0,0 +1,48 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+import java.io.IOException;
+
+/**
+ * Daemon responded with other HTTP status than 200. Bitcoind reports rejected calls this way
+ * (HTTP 500 with JSON-RPC error in the body).
+ */
+public class JsonRpcHttpException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int responseCode;
+    private final byte[] body;
+
+    public JsonRpcHttpException(String message, int responseCode, byte[] body) {
+        super(message);
+        this.responseCode = responseCode;
+        this.body = body;
+    }
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * @return response body or null when there was none
+     */
+    public byte[] getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,246 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+import com.azazar.bitcoin.jsonrpcclient.BitcoinException;
+import com.azazar.bitcoin.jsonrpcclient.BitcoinRPCException;
+import com.generalbytes.batm.server.extensions.extra.common.amounts.CoinAmount;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.AsyncWalletAdapter;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.IAsyncWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.IWithdrawalSender;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.WithdrawalBatcher;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daemon wallet decorator paying out purchases made within a short window in one sendmany transaction.
+ *
+ * Busy machines then produce one transaction with one fee instead of one per customer. A payout that
+ * doesn't leave within {@link #SEND_TIMEOUT} after its window is taken out of the queue and sent on its
+ * own. When the daemon rejects the sendmany (i.e. one of the addresses is invalid) payouts of the batch
+ * are sent one by one so a single bad payout doesn't fail the others. Payouts are never resent when
+ * it is not known whether the daemon accepted the sendmany. Queued payouts don't hold any thread, the
+ * blocking {@link #sendCoins} only waits for {@link #sendCoinsAsync}. Wallets of the same daemon account
+ * share one queue, so payouts leave together even when the wallet was created several times.
+ */
+public class PayoutBatchingWallet implements IRPCWallet, IAsyncWallet {
+    private static final Logger log = LoggerFactory.getLogger(PayoutBatchingWallet.class);
+
+    private static final long SEND_TIMEOUT = 30 * 1000; //30sec
+
+    private static final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("payout-timeout-%d")
+        .setDaemon(true)
+        .build());
+
+    private final IRPCWallet wallet;
+    private final long window;
+    private final WithdrawalBatcher batcher;
+
+    public PayoutBatchingWallet(IRPCWallet wallet, long window) {
+        this.wallet = wallet;
+        this.window = window;
+        this.batcher = WithdrawalBatcher.get(wallet.getAccountId(), new IWithdrawalSender() {
+            @Override
+            public Map<String, String> send(String cryptoCurrency, Map<String, BigDecimal> amountsByAddress) {
+                return sendBatch(cryptoCurrency, amountsByAddress);
+            }
+        }, window);
+    }
+
+    /**
+     * Parses payoutbatchseconds parameter of wallet login.
+     * @param seconds null when the parameter is missing
+     * @return window in milliseconds, 0 when missing, null when malformed
+     */
+    public static Long parseWindow(String seconds) {
+        if (seconds == null) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(seconds) * 1000;
+        } catch (NumberFormatException e) {
+            log.error("Invalid payout batch window: " + seconds);
+            return null;
+        }
+    }
+
+    /**
+     * @param wallet
+     * @param window milliseconds, 0 disables batching
+     * @return wallet batching payouts or the wallet itself when batching is disabled
+     */
+    public static IRPCWallet wrap(IRPCWallet wallet, long window) {
+        if (window <= 0 || wallet.getAccountId() == null) {
+            return wallet;
+        }
+        return new PayoutBatchingWallet(wallet, window);
+    }
+
+    @Override
+    public String sendCoins(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        try {
+            return sendCoinsAsync(destinationAddress, amount, cryptoCurrency, description).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Payout to " + destinationAddress + " failed", e);
+        }
+        return null;
+    }
+
+    @Override
+    public ListenableFuture<String> sendCoinsAsync(final String destinationAddress, final BigDecimal amount, final String cryptoCurrency, final String description) {
+        if (!getCryptoCurrencies().contains(cryptoCurrency)) {
+            log.error("Wallet error: unknown cryptocurrency: " + cryptoCurrency);
+            return Futures.immediateFuture(null);
+        }
+
+        final SettableFuture<String> result = SettableFuture.create();
+        final ListenableFuture<String> batched = batcher.submit(cryptoCurrency, destinationAddress, amount);
+        final ScheduledFuture<?> timeout = timeouts.schedule(new Runnable() {
+            @Override
+            public void run() {
+                //when the payout is already being sent, sending it again could cause second payout
+                if (batcher.cancel(cryptoCurrency, batched)) {
+                    log.warn("Payout to " + destinationAddress + " was not batched in time, sending it alone");
+                    forward(AsyncWalletAdapter.of(wallet).sendCoinsAsync(destinationAddress, amount, cryptoCurrency, description), result);
+                }
+            }
+        }, window + SEND_TIMEOUT, TimeUnit.MILLISECONDS);
+        Futures.addCallback(batched, new FutureCallback<String>() {
+            @Override
+            public void onSuccess(String txId) {
+                timeout.cancel(false);
+                result.set(txId);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (!batched.isCancelled()) { //cancelled payout is sent alone
+                    timeout.cancel(false);
+                    result.setException(t);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static void forward(ListenableFuture<String> from, final SettableFuture<String> to) {
+        Futures.addCallback(from, new FutureCallback<String>() {
+            @Override
+            public void onSuccess(String txId) {
+                to.set(txId);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                to.setException(t);
+            }
+        });
+    }
+
+    private Map<String, String> sendBatch(String cryptoCurrency, Map<String, BigDecimal> amountsByAddress) {
+        Map<String, String> results = new HashMap<String, String>();
+        if (amountsByAddress.size() > 1) {
+            Map<String, CoinAmount> amounts = new LinkedHashMap<String, CoinAmount>();
+            for (Map.Entry<String, BigDecimal> payout : amountsByAddress.entrySet()) {
+                amounts.put(payout.getKey(), CoinAmount.of(payout.getValue(), CoinAmount.SATOSHI_DECIMALS));
+            }
+            log.info(cryptoCurrency + " wallet sending coins from " + wallet.getAccountName() + " to " + amounts);
+            try {
+                String txId = wallet.getRPCClient().sendMany(wallet.getAccountName(), amounts);
+                RPCWallet.invalidateBalancesWhenConfirmed(wallet.getRPCClient(), txId, cryptoCurrency);
+                for (String address : amounts.keySet()) {
+                    results.put(address, txId);
+                }
+                return results;
+            } catch (BitcoinRPCException e) {
+                log.error(cryptoCurrency + " wallet error: sendmany failed, state of the payouts is unknown", e);
+                return results;
+            } catch (BitcoinException e) {
+                log.warn(cryptoCurrency + " wallet: sendmany rejected, sending payouts one by one: " + e.getMessage());
+            }
+        }
+        for (Map.Entry<String, BigDecimal> payout : amountsByAddress.entrySet()) {
+            results.put(payout.getKey(), wallet.sendCoins(payout.getKey(), payout.getValue(), cryptoCurrency, null));
+        }
+        return results;
+    }
+
+    @Override
+    public String getCryptoAddress(String cryptoCurrency) {
+        return wallet.getCryptoAddress(cryptoCurrency);
+    }
+
+    @Override
+    public BigDecimal getCryptoBalance(String cryptoCurrency) {
+        return wallet.getCryptoBalance(cryptoCurrency);
+    }
+
+    @Override
+    public ListenableFuture<String> getCryptoAddressAsync(String cryptoCurrency) {
+        return AsyncWalletAdapter.of(wallet).getCryptoAddressAsync(cryptoCurrency);
+    }
+
+    @Override
+    public ListenableFuture<BigDecimal> getCryptoBalanceAsync(String cryptoCurrency) {
+        return AsyncWalletAdapter.of(wallet).getCryptoBalanceAsync(cryptoCurrency);
+    }
+
+    @Override
+    public Set<String> getCryptoCurrencies() {
+        return wallet.getCryptoCurrencies();
+    }
+
+    @Override
+    public String getPreferredCryptoCurrency() {
+        return wallet.getPreferredCryptoCurrency();
+    }
+
+    @Override
+    public PooledRPCClient getRPCClient() {
+        return wallet.getRPCClient();
+    }
+
+    @Override
+    public String getAccountName() {
+        return wallet.getAccountName();
+    }
+
+    @Override
+    public String getAccountId() {
+        return wallet.getAccountId();
+    }
+}
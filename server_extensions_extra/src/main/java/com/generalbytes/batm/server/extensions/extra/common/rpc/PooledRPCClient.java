@@ -0,0 +1,258 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+import com.azazar.bitcoin.jsonrpcclient.BitcoinException;
+import com.azazar.bitcoin.jsonrpcclient.BitcoinJSONRPCClient;
+import com.azazar.bitcoin.jsonrpcclient.BitcoinRPCException;
+import com.generalbytes.batm.server.extensions.extra.common.amounts.CoinAmount;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bitcoin JSON-RPC client sending its calls through {@link JsonRpcTransport}.
+ *
+ * Clients are stateless, so all wallets talking to the same daemon share one client obtained by {@link #forUrl(String)}.
+ * Independent calls can be sent together in one request using {@link #batch()}. Confirmations of sent
+ * transactions can be followed by {@link #getConfirmationTracker()}.
+ */
+public class PooledRPCClient extends BitcoinJSONRPCClient {
+    private static final Logger log = LoggerFactory.getLogger(PooledRPCClient.class);
+
+    private static final String REQUEST_ID = "1"; //id used by BitcoinJSONRPCClient.prepareRequest
+
+    private static final ConcurrentMap<String, PooledRPCClient> clients = new ConcurrentHashMap<String, PooledRPCClient>();
+
+    private final JsonRpcTransport transport;
+    private final RPCMetrics metrics = new RPCMetrics();
+    private final ConfirmationTracker confirmationTracker = new ConfirmationTracker(this);
+
+    public PooledRPCClient(String rpcURL) throws MalformedURLException {
+        this(rpcURL, JsonRpcTransport.DEFAULT_CONNECT_TIMEOUT, JsonRpcTransport.DEFAULT_READ_TIMEOUT, false);
+    }
+
+    public PooledRPCClient(String rpcURL, int connectTimeout, int readTimeout, boolean trustAllCertificates) throws MalformedURLException {
+        super(rpcURL);
+        transport = new JsonRpcTransport(rpcURL, connectTimeout, readTimeout, trustAllCertificates);
+    }
+
+    /**
+     * @param rpcURL
+     * @return shared client of the daemon verifying its certificate, null when the url is invalid
+     */
+    public static PooledRPCClient forUrl(String rpcURL) {
+        return forUrl(rpcURL, false);
+    }
+
+    /**
+     * @param rpcURL
+     * @param trustAllCertificates true for daemons with self-signed certificates, disables certificate and hostname verification
+     * @return shared client of the daemon with default timeouts or null when the url is invalid
+     */
+    public static PooledRPCClient forUrl(String rpcURL, boolean trustAllCertificates) {
+        String key = (trustAllCertificates ? "trustall|" : "") + rpcURL;
+        PooledRPCClient client = clients.get(key);
+        if (client == null) {
+            try {
+                PooledRPCClient created = new PooledRPCClient(rpcURL, JsonRpcTransport.DEFAULT_CONNECT_TIMEOUT, JsonRpcTransport.DEFAULT_READ_TIMEOUT, trustAllCertificates);
+                client = clients.putIfAbsent(key, created);
+                if (client == null) {
+                    client = created;
+                    RPCStatusReporter.start();
+                }
+            } catch (MalformedURLException e) {
+                log.error("Invalid RPC url", e);
+            }
+        }
+        return client;
+    }
+
+    /**
+     * @return shared clients created so far
+     */
+    public static Collection<PooledRPCClient> getClients() {
+        return new ArrayList<PooledRPCClient>(clients.values());
+    }
+
+    @Override
+    public Object query(String method, Object... params) throws BitcoinException {
+        byte[] request = prepareRequest(method, params);
+        byte[] response;
+        long start = System.nanoTime();
+        try {
+            response = transport.post(request);
+            metrics.record(1, System.nanoTime() - start, true);
+        } catch (JsonRpcHttpException e) {
+            metrics.record(1, System.nanoTime() - start, false);
+            if (e.getBody() != null && e.getBody().length > 0) {
+                //call rejected by the daemon, throws BitcoinException with the JSON-RPC error
+                try {
+                    loadResponse(new ByteArrayInputStream(e.getBody()), REQUEST_ID, true);
+                } catch (BitcoinRPCException ignored) {
+                    //body is not a JSON-RPC response
+                } catch (IOException ignored) {
+                } catch (RuntimeException ignored) {
+                    //body is not JSON at all, i.e. error page of a proxy in front of the daemon
+                }
+            }
+            throw new BitcoinRPCException("RPC query failed: " + method + " " + Arrays.deepToString(params) + ": " + e.getMessage(), e);
+        } catch (IOException e) {
+            metrics.record(1, System.nanoTime() - start, false);
+            throw new BitcoinRPCException("RPC query failed: " + method + " " + Arrays.deepToString(params) + ": " + e.getMessage(), e);
+        }
+        try {
+            return loadResponse(new ByteArrayInputStream(response), REQUEST_ID, true);
+        } catch (IOException e) {
+            throw new BitcoinRPCException("RPC response of " + method + " cannot be parsed", e);
+        } catch (RuntimeException e) {
+            throw new BitcoinRPCException("RPC response of " + method + " cannot be parsed", e);
+        }
+    }
+
+    /**
+     * Exact variant of {@link #getBalance(String)}.
+     * @param account
+     * @return balance of the account in satoshis
+     */
+    public CoinAmount getBalanceAmount(String account) throws BitcoinException {
+        return toAmount(query("getbalance", account));
+    }
+
+    /**
+     * Exact variant of {@link #sendFrom(String, String, double)}, amount is serialized without conversion to double.
+     * @return transaction id
+     */
+    public String sendFrom(String fromAccount, String toBitcoinAddress, CoinAmount amount) throws BitcoinException {
+        return (String) query("sendfrom", fromAccount, toBitcoinAddress, amount);
+    }
+
+    /**
+     * Sends coins to several addresses in one transaction.
+     * @param fromAccount
+     * @param amountsByAddress
+     * @return transaction id
+     */
+    public String sendMany(String fromAccount, Map<String, CoinAmount> amountsByAddress) throws BitcoinException {
+        return (String) query("sendmany", fromAccount, amountsByAddress);
+    }
+
+    /**
+     * @return new empty batch of calls of this daemon
+     */
+    public RPCBatch batch() {
+        return new RPCBatch(transport, metrics);
+    }
+
+    /**
+     * Balances of several accounts in one round trip.
+     * @param accountNames
+     * @return balance by account name, accounts whose balance couldn't be obtained are missing. Null when the daemon can't be reached.
+     */
+    public Map<String, BigDecimal> getBalances(Collection<String> accountNames) {
+        RPCBatch batch = batch();
+        Map<String, Integer> calls = new LinkedHashMap<String, Integer>();
+        for (String accountName : accountNames) {
+            if (!calls.containsKey(accountName)) {
+                calls.put(accountName, batch.add("getbalance", accountName));
+            }
+        }
+        try {
+            batch.execute();
+        } catch (BitcoinException e) {
+            log.error("Cannot get balances from " + transport.getUrl().getHost(), e);
+            return null;
+        }
+        Map<String, BigDecimal> result = new LinkedHashMap<String, BigDecimal>();
+        for (Map.Entry<String, Integer> call : calls.entrySet()) {
+            Object balance = batch.getResultOrNull(call.getValue());
+            if (balance instanceof Number) {
+                result.put(call.getKey(), CoinAmount.of((Number) balance, CoinAmount.SATOSHI_DECIMALS).toBigDecimal());
+            } else {
+                log.warn("Cannot get balance of account " + call.getKey() + " from " + transport.getUrl().getHost());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Wallet transactions (gettransaction) in one round trip.
+     * @param txIds
+     * @return transaction by id as returned by the daemon, transactions not found are missing. Null when the daemon can't be reached.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, Object>> getTransactions(Collection<String> txIds) {
+        RPCBatch batch = batch();
+        Map<String, Integer> calls = new LinkedHashMap<String, Integer>();
+        for (String txId : txIds) {
+            if (!calls.containsKey(txId)) {
+                calls.put(txId, batch.add("gettransaction", txId));
+            }
+        }
+        try {
+            batch.execute();
+        } catch (BitcoinException e) {
+            log.error("Cannot get transactions from " + transport.getUrl().getHost(), e);
+            return null;
+        }
+        Map<String, Map<String, Object>> result = new LinkedHashMap<String, Map<String, Object>>();
+        for (Map.Entry<String, Integer> call : calls.entrySet()) {
+            Object transaction = batch.getResultOrNull(call.getValue());
+            if (transaction instanceof Map) {
+                result.put(call.getKey(), (Map<String, Object>) transaction);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return call counters of this daemon
+     */
+    public RPCMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return tracker of confirmations of this daemon's wallet transactions
+     */
+    public ConfirmationTracker getConfirmationTracker() {
+        return confirmationTracker;
+    }
+
+    private static CoinAmount toAmount(Object value) throws BitcoinException {
+        if (!(value instanceof Number)) {
+            throw new BitcoinException("Amount expected: " + value);
+        }
+        return CoinAmount.of((Number) value, CoinAmount.SATOSHI_DECIMALS);
+    }
+
+    public JsonRpcTransport getTransport() {
+        return transport;
+    }
+}
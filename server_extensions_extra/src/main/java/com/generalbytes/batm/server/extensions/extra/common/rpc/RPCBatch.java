@@ -0,0 +1,153 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+import com.azazar.bitcoin.jsonrpcclient.BitcoinException;
+import com.azazar.bitcoin.jsonrpcclient.BitcoinRPCException;
+import com.azazar.krotjson.JSON;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON-RPC 2.0 batch - several calls sent to the daemon in one HTTP request.
+ *
+ * Usage:
+ * <pre>
+ * RPCBatch batch = client.batch();
+ * int balance = batch.add("getbalance", accountName);
+ * int addresses = batch.add("getaddressesbyaccount", accountName);
+ * batch.execute();
+ * Number result = (Number) batch.getResult(balance);
+ * </pre>
+ * Calls are independent, failure of one call doesn't fail the others.
+ */
+public class RPCBatch {
+    private final JsonRpcTransport transport;
+    private final RPCMetrics metrics;
+    private final List<Map<String, Object>> calls = new ArrayList<Map<String, Object>>();
+
+    private Object[] results;
+    private String[] errors;
+
+    RPCBatch(JsonRpcTransport transport, RPCMetrics metrics) {
+        this.transport = transport;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds call to the batch.
+     * @return index of the call used to get its result
+     */
+    public int add(String method, Object... params) {
+        if (results != null) {
+            throw new IllegalStateException("Batch was already executed");
+        }
+        int index = calls.size();
+        Map<String, Object> call = new LinkedHashMap<String, Object>();
+        call.put("jsonrpc", "2.0");
+        call.put("id", String.valueOf(index));
+        call.put("method", method);
+        call.put("params", params == null ? new Object[0] : params);
+        calls.add(call);
+        return index;
+    }
+
+    public int size() {
+        return calls.size();
+    }
+
+    /**
+     * Sends all calls in one request.
+     * @throws BitcoinException when the request as a whole failed
+     */
+    public void execute() throws BitcoinException {
+        Object[] batchResults = new Object[calls.size()];
+        String[] batchErrors = new String[calls.size()];
+        if (!calls.isEmpty()) {
+            Object response;
+            long start = System.nanoTime();
+            try {
+                byte[] responseBody = transport.post(JSON.stringify(calls).getBytes("UTF-8"));
+                metrics.record(calls.size(), System.nanoTime() - start, true);
+                response = JSON.parse(new String(responseBody, "UTF-8"));
+            } catch (IOException e) {
+                metrics.record(calls.size(), System.nanoTime() - start, false);
+                throw new BitcoinRPCException("RPC batch of " + calls.size() + " calls failed: " + e.getMessage(), e);
+            } catch (RuntimeException e) {
+                //response is not JSON, i.e. error page of a proxy in front of the daemon
+                throw new BitcoinRPCException("RPC batch response cannot be parsed: " + e.getMessage(), e);
+            }
+            if (!(response instanceof List)) {
+                throw new BitcoinRPCException("Invalid RPC batch response: " + response);
+            }
+            for (int i = 0; i < batchErrors.length; i++) {
+                batchErrors[i] = "No response";
+            }
+            for (Object item : (List<?>) response) {
+                if (!(item instanceof Map)) {
+                    continue;
+                }
+                Map<?, ?> callResponse = (Map<?, ?>) item;
+                int index;
+                try {
+                    index = Integer.parseInt(String.valueOf(callResponse.get("id")));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (index < 0 || index >= batchResults.length) {
+                    continue;
+                }
+                Object error = callResponse.get("error");
+                batchErrors[index] = error == null ? null : JSON.stringify(error);
+                batchResults[index] = callResponse.get("result");
+            }
+        }
+        results = batchResults;
+        errors = batchErrors;
+    }
+
+    /**
+     * @param index returned by {@link #add(String, Object...)}
+     * @return result of the call
+     * @throws BitcoinException when the call failed
+     */
+    public Object getResult(int index) throws BitcoinException {
+        if (results == null) {
+            throw new IllegalStateException("Batch was not executed yet");
+        }
+        if (errors[index] != null) {
+            throw new BitcoinException(calls.get(index).get("method") + ": " + errors[index]);
+        }
+        return results[index];
+    }
+
+    /**
+     * @return result of the call or null when the call failed
+     */
+    public Object getResultOrNull(int index) {
+        try {
+            return getResult(index);
+        } catch (BitcoinException e) {
+            return null;
+        }
+    }
+}
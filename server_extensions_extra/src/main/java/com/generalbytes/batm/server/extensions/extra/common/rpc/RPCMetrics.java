@@ -0,0 +1,68 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Call counters of one daemon.
+ */
+public class RPCMetrics {
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /**
+     * Records one HTTP request to the daemon.
+     * @param callCount number of RPC calls in the request (more than one for batches)
+     * @param nanos duration of the request
+     * @param success false when the request as a whole failed
+     */
+    void record(int callCount, long nanos, boolean success) {
+        requests.incrementAndGet();
+        calls.addAndGet(callCount);
+        totalNanos.addAndGet(nanos);
+        if (!success) {
+            failures.incrementAndGet();
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getAverageLatencyMillis() {
+        long count = requests.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / count);
+    }
+
+    @Override
+    public String toString() {
+        return "requests=" + getRequests() + ", calls=" + getCalls() + ", failures=" + getFailures() + ", avgLatency=" + getAverageLatencyMillis() + "ms";
+    }
+}
@@ -0,0 +1,110 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+import com.generalbytes.batm.server.extensions.IWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.IAccountWallet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Periodically logs call counters of all daemons ({@link RPCMetrics}) and balances of all wallets created by
+ * extensions, obtained in bulk by {@link RPCWalletStatus}. Started when the first daemon client is created.
+ */
+public class RPCStatusReporter {
+    private static final Logger log = LoggerFactory.getLogger(RPCStatusReporter.class);
+
+    public static final long INTERVAL = 5 * 60 * 1000; //5min
+
+    private static final AtomicBoolean started = new AtomicBoolean();
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("rpc-status-reporter-%d")
+        .setDaemon(true)
+        .build());
+
+    /**
+     * Schedules the reports, subsequent calls do nothing.
+     */
+    public static void start() {
+        if (started.compareAndSet(false, true)) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        report();
+                    } catch (Throwable t) {
+                        log.error("Cannot report wallet status", t);
+                    }
+                }
+            }, INTERVAL, INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void report() {
+        for (PooledRPCClient client : PooledRPCClient.getClients()) {
+            URL url = client.getTransport().getUrl();
+            log.info("Daemon " + url.getHost() + ":" + url.getPort() + " " + client.getMetrics());
+        }
+
+        //wallets created several times for the same account are reported once
+        List<IWallet> wallets = new ArrayList<IWallet>();
+        Set<String> accountIds = new HashSet<String>();
+        for (BalanceCachingWallet wallet : BalanceCachingWallet.getInstances()) {
+            String accountId = getAccountId(wallet);
+            if (accountId == null || accountIds.add(accountId)) {
+                wallets.add(wallet);
+            }
+        }
+        if (wallets.isEmpty()) {
+            return;
+        }
+        Map<IWallet, BigDecimal> balances = RPCWalletStatus.getBalances(wallets);
+        for (IWallet wallet : wallets) {
+            BigDecimal balance = balances.get(wallet);
+            String name = getAccountId(wallet);
+            if (name == null) {
+                name = ((BalanceCachingWallet) wallet).getWallet().getClass().getSimpleName();
+            }
+            if (balance == null) {
+                log.info("Wallet " + name + " balance: unknown");
+            } else {
+                log.info("Wallet " + name + " balance: " + balance.toPlainString() + " " + wallet.getPreferredCryptoCurrency());
+            }
+        }
+    }
+
+    private static String getAccountId(IWallet wallet) {
+        IWallet inner = ((BalanceCachingWallet) wallet).getWallet();
+        return inner instanceof IAccountWallet ? ((IAccountWallet) inner).getAccountId() : null;
+    }
+}
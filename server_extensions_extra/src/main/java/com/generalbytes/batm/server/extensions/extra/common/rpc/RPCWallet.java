@@ -0,0 +1,202 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+import com.azazar.bitcoin.jsonrpcclient.BitcoinException;
+import com.generalbytes.batm.server.extensions.extra.common.amounts.CoinAmount;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.AddressPool;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.AsyncWalletAdapter;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.IAsyncWallet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Wallet of one account of a Bitcoin-family daemon (bitcoind, litecoind, dashd, ...).
+ *
+ * All these daemons share bitcoind's RPC interface, so coin extensions only configure the cryptocurrency.
+ * Wallets of one daemon share its {@link PooledRPCClient}, which also collects call metrics of the daemon.
+ */
+public class RPCWallet implements IRPCWallet, IAsyncWallet {
+    private static final Logger log = LoggerFactory.getLogger(RPCWallet.class);
+
+    private final String cryptoCurrency;
+    private final String accountName;
+    private final String accountId;
+    private final PooledRPCClient client;
+    private final AddressPool addressPool;
+
+    public RPCWallet(String rpcURL, String accountName, String cryptoCurrency) {
+        this(rpcURL, accountName, cryptoCurrency, false);
+    }
+
+    /**
+     * @param trustAllCertificates true skips verification of daemon's certificate, only for daemons known to use self-signed ones
+     */
+    public RPCWallet(String rpcURL, String accountName, String cryptoCurrency, boolean trustAllCertificates) {
+        this.cryptoCurrency = cryptoCurrency;
+        this.accountName = accountName;
+        this.client = PooledRPCClient.forUrl(rpcURL, trustAllCertificates);
+        if (client == null) {
+            accountId = null;
+            addressPool = null;
+        } else {
+            URL url = client.getTransport().getUrl();
+            accountId = cryptoCurrency + "-" + url.getHost() + "-" + url.getPort() + "-" + accountName;
+            addressPool = AddressPool.get(accountId, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return client.getNewAddress(accountName);
+                }
+            });
+        }
+    }
+
+    @Override
+    public Set<String> getCryptoCurrencies() {
+        Set<String> result = new HashSet<String>();
+        result.add(cryptoCurrency);
+        return result;
+    }
+
+    @Override
+    public String getPreferredCryptoCurrency() {
+        return cryptoCurrency;
+    }
+
+    @Override
+    public String sendCoins(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        if (!checkCryptoCurrency(cryptoCurrency)) {
+            return null;
+        }
+
+        CoinAmount satoshis = CoinAmount.of(amount, CoinAmount.SATOSHI_DECIMALS);
+        log.info(this.cryptoCurrency + " wallet sending coins from " + accountName + " to: " + destinationAddress + " " + satoshis);
+        try {
+            String result = client.sendFrom(accountName, destinationAddress, satoshis);
+            log.debug("result = " + result);
+            invalidateBalancesWhenConfirmed(client, result, this.cryptoCurrency);
+            return result;
+        } catch (BitcoinException e) {
+            log.error(this.cryptoCurrency + " wallet error: sending coins failed", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return new address of the account taken from the pre-generated pool
+     */
+    @Override
+    public String getCryptoAddress(String cryptoCurrency) {
+        if (!checkCryptoCurrency(cryptoCurrency)) {
+            return null;
+        }
+        return addressPool.next();
+    }
+
+    @Override
+    public BigDecimal getCryptoBalance(String cryptoCurrency) {
+        if (!checkCryptoCurrency(cryptoCurrency)) {
+            return null;
+        }
+        try {
+            return client.getBalanceAmount(accountName).toBigDecimal();
+        } catch (BitcoinException e) {
+            log.error(this.cryptoCurrency + " wallet error: cannot get balance", e);
+            return null;
+        }
+    }
+
+    @Override
+    public ListenableFuture<String> sendCoinsAsync(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        return AsyncWalletAdapter.blocking(this).sendCoinsAsync(destinationAddress, amount, cryptoCurrency, description);
+    }
+
+    /**
+     * Completes without waiting for the wallet unless its address pool is empty.
+     */
+    @Override
+    public ListenableFuture<String> getCryptoAddressAsync(String cryptoCurrency) {
+        if (!checkCryptoCurrency(cryptoCurrency)) {
+            return Futures.immediateFuture(null);
+        }
+        return addressPool.nextAsync();
+    }
+
+    @Override
+    public ListenableFuture<BigDecimal> getCryptoBalanceAsync(String cryptoCurrency) {
+        return AsyncWalletAdapter.blocking(this).getCryptoBalanceAsync(cryptoCurrency);
+    }
+
+    @Override
+    public PooledRPCClient getRPCClient() {
+        return client;
+    }
+
+    @Override
+    public String getAccountName() {
+        return accountName;
+    }
+
+    @Override
+    public String getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Change of a payout is counted to the balance once the payout has a confirmation, cached balances of the
+     * cryptocurrency are dropped then (or when the payout conflicts).
+     */
+    static void invalidateBalancesWhenConfirmed(PooledRPCClient client, String txId, final String cryptoCurrency) {
+        if (txId == null) {
+            return;
+        }
+        final ConfirmationTracker tracker = client.getConfirmationTracker();
+        tracker.track(txId, 1, new IConfirmationListener() {
+            @Override
+            public void confirmationsChanged(String txId, int confirmations, boolean finished) {
+                if (confirmations < 0) {
+                    tracker.untrack(txId); //conflicted, will never confirm
+                }
+                if (finished || confirmations < 0) {
+                    BalanceCachingWallet.invalidateAll(cryptoCurrency);
+                }
+            }
+        });
+    }
+
+    private boolean checkCryptoCurrency(String cryptoCurrency) {
+        if (client == null) {
+            log.error(this.cryptoCurrency + " wallet error: invalid RPC url.");
+            return false;
+        }
+        if (!this.cryptoCurrency.equalsIgnoreCase(cryptoCurrency)) {
+            log.error(this.cryptoCurrency + " wallet error: unknown cryptocurrency: " + cryptoCurrency);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.rpc;
+
+import com.generalbytes.batm.server.extensions.IWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.AsyncWalletAdapter;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.FailoverWallet;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bulk status of wallets, i.e. for dashboard refresh.
+ *
+ * Daemon wallets are grouped by their daemon and each daemon is asked once using a JSON-RPC batch, other
+ * wallets are asked one by one. All requests run concurrently on the wallet pool. Wallets created by extensions
+ * are decorated by {@link BalanceCachingWallet}, the wallet is looked up behind it. Balance of a
+ * {@link FailoverWallet} is the largest balance of its backends, as it reports itself.
+ */
+public class RPCWalletStatus {
+    private static final Logger log = LoggerFactory.getLogger(RPCWalletStatus.class);
+
+    private static final long TIMEOUT = JsonRpcTransport.DEFAULT_CONNECT_TIMEOUT + JsonRpcTransport.DEFAULT_READ_TIMEOUT;
+
+    /**
+     * @param wallets
+     * @return balance by wallet, wallets whose balance couldn't be obtained within the timeout are missing
+     */
+    public static Map<IWallet, BigDecimal> getBalances(List<? extends IWallet> wallets) {
+        Map<IWallet, List<IWallet>> backendsByWallet = new LinkedHashMap<IWallet, List<IWallet>>();
+        Map<PooledRPCClient, List<IRPCWallet>> walletsByDaemon = new LinkedHashMap<PooledRPCClient, List<IRPCWallet>>();
+        List<IWallet> others = new ArrayList<IWallet>();
+        for (IWallet wallet : wallets) {
+            List<IWallet> backends = new ArrayList<IWallet>();
+            addBackends(wallet, backends);
+            backendsByWallet.put(wallet, backends);
+            for (IWallet backend : backends) {
+                PooledRPCClient client = backend instanceof IRPCWallet ? ((IRPCWallet) backend).getRPCClient() : null;
+                if (client == null) {
+                    if (!others.contains(backend)) {
+                        others.add(backend);
+                    }
+                    continue;
+                }
+                List<IRPCWallet> daemonWallets = walletsByDaemon.get(client);
+                if (daemonWallets == null) {
+                    daemonWallets = new ArrayList<IRPCWallet>();
+                    walletsByDaemon.put(client, daemonWallets);
+                }
+                if (!daemonWallets.contains(backend)) {
+                    daemonWallets.add((IRPCWallet) backend);
+                }
+            }
+        }
+
+        Map<PooledRPCClient, ListenableFuture<Map<String, BigDecimal>>> daemonFutures = new LinkedHashMap<PooledRPCClient, ListenableFuture<Map<String, BigDecimal>>>();
+        for (final PooledRPCClient client : walletsByDaemon.keySet()) {
+            final List<String> accountNames = new ArrayList<String>();
+            for (IRPCWallet wallet : walletsByDaemon.get(client)) {
+                accountNames.add(wallet.getAccountName());
+            }
+            daemonFutures.put(client, AsyncWalletAdapter.submit(new Callable<Map<String, BigDecimal>>() {
+                @Override
+                public Map<String, BigDecimal> call() throws Exception {
+                    return client.getBalances(accountNames);
+                }
+            }));
+        }
+        Map<IWallet, ListenableFuture<BigDecimal>> otherFutures = new LinkedHashMap<IWallet, ListenableFuture<BigDecimal>>();
+        for (IWallet wallet : others) {
+            otherFutures.put(wallet, AsyncWalletAdapter.of(wallet).getCryptoBalanceAsync(wallet.getPreferredCryptoCurrency()));
+        }
+
+        //whatever completed by the deadline is used, one slow daemon doesn't discard balances of the others
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        Map<IWallet, BigDecimal> backendBalances = new HashMap<IWallet, BigDecimal>();
+        for (Map.Entry<PooledRPCClient, ListenableFuture<Map<String, BigDecimal>>> entry : daemonFutures.entrySet()) {
+            Map<String, BigDecimal> balances = get(entry.getValue(), deadline);
+            if (balances == null) {
+                continue;
+            }
+            for (IRPCWallet wallet : walletsByDaemon.get(entry.getKey())) {
+                BigDecimal balance = balances.get(wallet.getAccountName());
+                if (balance != null) {
+                    backendBalances.put(wallet, balance);
+                }
+            }
+        }
+        for (Map.Entry<IWallet, ListenableFuture<BigDecimal>> entry : otherFutures.entrySet()) {
+            BigDecimal balance = get(entry.getValue(), deadline);
+            if (balance != null) {
+                backendBalances.put(entry.getKey(), balance);
+            }
+        }
+
+        Map<IWallet, BigDecimal> result = new LinkedHashMap<IWallet, BigDecimal>();
+        for (Map.Entry<IWallet, List<IWallet>> entry : backendsByWallet.entrySet()) {
+            BigDecimal largest = null;
+            for (IWallet backend : entry.getValue()) {
+                BigDecimal balance = backendBalances.get(backend);
+                if (balance != null && (largest == null || balance.compareTo(largest) > 0)) {
+                    largest = balance;
+                }
+            }
+            if (largest != null) {
+                result.put(entry.getKey(), largest);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds wallets actually holding the coins, looked up behind {@link BalanceCachingWallet} and {@link FailoverWallet}.
+     */
+    private static void addBackends(IWallet wallet, List<IWallet> backends) {
+        while (wallet instanceof BalanceCachingWallet) {
+            wallet = ((BalanceCachingWallet) wallet).getWallet();
+        }
+        if (wallet instanceof FailoverWallet) {
+            for (IWallet backend : ((FailoverWallet) wallet).getWallets()) {
+                addBackends(backend, backends);
+            }
+        } else if (wallet != null) {
+            backends.add(wallet);
+        }
+    }
+
+    /**
+     * @return result or null when the future failed or didn't complete by the deadline
+     */
+    private static <T> T get(ListenableFuture<T> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            log.warn("Wallet balance was not obtained in time");
+        } catch (ExecutionException e) {
+            log.error("Cannot get wallet balance", e.getCause());
+        }
+        return null;
+    }
+}
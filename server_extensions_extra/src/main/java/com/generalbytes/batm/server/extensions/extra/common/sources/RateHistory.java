@@ -0,0 +1,257 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.sources;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded history of rates fetched for one currency pair.
+ *
+ * Samples are kept in preallocated primitive arrays used as a ring buffer, so recording
+ * a rate does not allocate and the memory used per pair is fixed. Rate sources feed
+ * histories through {@link #record(String, String, BigDecimal)}; consumers (spread
+ * calculation, spike detection) read them through {@link #get(String, String)}.
+ */
+public class RateHistory {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, RateHistory>> histories = new ConcurrentHashMap<String, ConcurrentMap<String, RateHistory>>();
+
+    private final long[] timestamps;
+    private final double[] prices;
+    private final double[] volumes;
+    private int head; //index where next sample will be written
+    private int size;
+
+    public RateHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        timestamps = new long[capacity];
+        prices = new double[capacity];
+        volumes = new double[capacity];
+    }
+
+    /**
+     * Returns history of given currency pair, creating it on first use. Currency codes are case insensitive.
+     * @param cryptoCurrency
+     * @param fiatCurrency
+     * @return
+     */
+    public static RateHistory get(String cryptoCurrency, String fiatCurrency) {
+        //maps are keyed by codes as callers spell them too, so the code is normalised only on first use
+        ConcurrentMap<String, RateHistory> byFiat = histories.get(cryptoCurrency);
+        if (byFiat == null) {
+            String crypto = cryptoCurrency.toUpperCase();
+            byFiat = histories.get(crypto);
+            if (byFiat == null) {
+                ConcurrentMap<String, RateHistory> created = new ConcurrentHashMap<String, RateHistory>();
+                byFiat = histories.putIfAbsent(crypto, created);
+                if (byFiat == null) {
+                    byFiat = created;
+                }
+            }
+            histories.putIfAbsent(cryptoCurrency, byFiat);
+        }
+        RateHistory history = byFiat.get(fiatCurrency);
+        if (history == null) {
+            String fiat = fiatCurrency.toUpperCase();
+            history = byFiat.get(fiat);
+            if (history == null) {
+                RateHistory created = new RateHistory(DEFAULT_CAPACITY);
+                history = byFiat.putIfAbsent(fiat, created);
+                if (history == null) {
+                    history = created;
+                }
+            }
+            byFiat.putIfAbsent(fiatCurrency, history);
+        }
+        return history;
+    }
+
+    /**
+     * Records rate obtained by a rate source. Null rates (failed requests) are ignored.
+     * @param cryptoCurrency
+     * @param fiatCurrency
+     * @param rate
+     */
+    public static void record(String cryptoCurrency, String fiatCurrency, BigDecimal rate) {
+        record(cryptoCurrency, fiatCurrency, rate, null);
+    }
+
+    /**
+     * Records rate together with volume traded since the previous rate of the same source, used by
+     * {@link #getVwap(long)}. Null volume means unknown.
+     * @param cryptoCurrency
+     * @param fiatCurrency
+     * @param rate
+     * @param volume
+     */
+    public static void record(String cryptoCurrency, String fiatCurrency, BigDecimal rate, BigDecimal volume) {
+        if (cryptoCurrency == null || fiatCurrency == null || rate == null) {
+            return;
+        }
+        get(cryptoCurrency, fiatCurrency).append(System.currentTimeMillis(), rate.doubleValue(), volume == null ? 0 : volume.doubleValue());
+    }
+
+    /**
+     * Appends sample. Window queries rely on samples being ordered by time, so a sample older than the newest
+     * one (i.e. after system clock was set back) is ignored.
+     * @return false when the sample was ignored
+     */
+    public synchronized boolean append(long timestamp, double price, double volume) {
+        if (size > 0 && timestamp < timestamps[index(0)]) {
+            return false;
+        }
+        timestamps[head] = timestamp;
+        prices[head] = price;
+        volumes[head] = volume;
+        head = (head + 1) % prices.length;
+        if (size < prices.length) {
+            size++;
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return prices.length;
+    }
+
+    /**
+     * @return last recorded price or NaN when nothing was recorded yet
+     */
+    public synchronized double getLastPrice() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        return prices[index(0)];
+    }
+
+    /**
+     * Copies up to n most recent samples, newest first, into provided arrays.
+     * Either array may be null when caller is not interested in it. No more samples than fit into
+     * the arrays are copied.
+     * @return number of copied samples
+     */
+    public synchronized int getLast(int n, long[] timestampsOut, double[] pricesOut) {
+        int count = Math.max(0, Math.min(n, size));
+        if (timestampsOut != null) {
+            count = Math.min(count, timestampsOut.length);
+        }
+        if (pricesOut != null) {
+            count = Math.min(count, pricesOut.length);
+        }
+        for (int i = 0; i < count; i++) {
+            int idx = index(i);
+            if (timestampsOut != null) {
+                timestampsOut[i] = timestamps[idx];
+            }
+            if (pricesOut != null) {
+                pricesOut[i] = prices[idx];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return minimum price recorded since given time or NaN when there are no samples in the window
+     */
+    public synchronized double getMin(long sinceTimestamp) {
+        double result = Double.NaN;
+        for (int i = 0; i < size; i++) {
+            int idx = index(i);
+            if (timestamps[idx] < sinceTimestamp) {
+                break;
+            }
+            if (Double.isNaN(result) || prices[idx] < result) {
+                result = prices[idx];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return maximum price recorded since given time or NaN when there are no samples in the window
+     */
+    public synchronized double getMax(long sinceTimestamp) {
+        double result = Double.NaN;
+        for (int i = 0; i < size; i++) {
+            int idx = index(i);
+            if (timestamps[idx] < sinceTimestamp) {
+                break;
+            }
+            if (Double.isNaN(result) || prices[idx] > result) {
+                result = prices[idx];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return average price recorded since given time or NaN when there are no samples in the window
+     */
+    public synchronized double getAverage(long sinceTimestamp) {
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int idx = index(i);
+            if (timestamps[idx] < sinceTimestamp) {
+                break;
+            }
+            sum += prices[idx];
+            count++;
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * Volume weighted average price since given time, every sample weighted by volume traded since
+     * the previous sample of its source. Samples recorded without volume are skipped.
+     * @return VWAP or NaN when there are no samples with volume in the window
+     */
+    public synchronized double getVwap(long sinceTimestamp) {
+        double weighted = 0;
+        double totalVolume = 0;
+        for (int i = 0; i < size; i++) {
+            int idx = index(i);
+            if (timestamps[idx] < sinceTimestamp) {
+                break;
+            }
+            weighted += prices[idx] * volumes[idx];
+            totalVolume += volumes[idx];
+        }
+        return totalVolume == 0 ? Double.NaN : weighted / totalVolume;
+    }
+
+    /**
+     * Maps age of sample (0 = newest) to array index.
+     */
+    private int index(int age) {
+        int idx = head - 1 - age;
+        if (idx < 0) {
+            idx += prices.length;
+        }
+        return idx;
+    }
+}
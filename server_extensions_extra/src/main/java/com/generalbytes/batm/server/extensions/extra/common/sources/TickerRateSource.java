@@ -0,0 +1,277 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.sources;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.generalbytes.batm.server.extensions.IRateSource;
+import com.generalbytes.batm.server.extensions.extra.common.http.AsyncHttpFetcher;
+import com.generalbytes.batm.server.extensions.extra.common.http.IResponseHandler;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Rate source reading the rate from a JSON ticker document.
+ *
+ * Source is configured by an url template and a path to the rate inside the document.
+ * Both may contain {crypto} and {fiat} placeholders which are replaced by the requested
+ * currencies, optionally translated to the symbols used by the upstream through
+ * {@link #setSymbol(String, String)}. Path segments are separated by dots, numeric segments
+ * index arrays.
+ *
+ * Documents are cached by their resolved url and shared by all sources, so a ticker returning
+ * rates of several pairs is downloaded once per cache period, and concurrent callers wait for
+ * a single download instead of issuing their own.
+ */
+public class TickerRateSource implements IRateSource {
+    private static final Logger log = LoggerFactory.getLogger(TickerRateSource.class);
+
+    public static final long DEFAULT_CACHE_TIME = 30 * 1000; //30sec
+    private static final long MAXIMUM_CACHE_TIME = 10 * 60 * 1000; //10min
+
+    private static final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
+    private static final Cache<String, CachedDocument> documents = CacheBuilder
+            .newBuilder()
+            .expireAfterWrite(MAXIMUM_CACHE_TIME, TimeUnit.MILLISECONDS)
+            .build();
+    private static final Striped<Lock> locks = Striped.lock(64);
+
+    private static final IResponseHandler<JsonNode> JSON_HANDLER = new IResponseHandler<JsonNode>() {
+        @Override
+        public JsonNode handle(InputStream in) throws IOException {
+            return mapper.readTree(in);
+        }
+    };
+
+    private final String name;
+    private final String urlTemplate;
+    private final String valuePath;
+    private final String preferredFiatCurrency;
+    private final Set<String> cryptoCurrencies;
+    private final Set<String> fiatCurrencies;
+    private final Map<String, String> symbols = new HashMap<String, String>();
+    private String errorPath;
+    private long cacheTime = DEFAULT_CACHE_TIME;
+    private SSLSocketFactory sslSocketFactory;
+    private boolean ignoreHttpErrorCodes;
+
+    private static class CachedDocument {
+        private final JsonNode document;
+        private final long timestamp;
+
+        private CachedDocument(JsonNode document) {
+            this.document = document;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+
+    public TickerRateSource(String name, String urlTemplate, String valuePath, String preferredFiatCurrency, Set<String> cryptoCurrencies, Set<String> fiatCurrencies) {
+        this.name = name;
+        this.urlTemplate = urlTemplate;
+        this.valuePath = valuePath;
+        this.preferredFiatCurrency = preferredFiatCurrency;
+        this.cryptoCurrencies = Collections.unmodifiableSet(new HashSet<String>(cryptoCurrencies));
+        this.fiatCurrencies = Collections.unmodifiableSet(new HashSet<String>(fiatCurrencies));
+    }
+
+    public TickerRateSource(String name, String urlTemplate, String valuePath, String preferredFiatCurrency, String cryptoCurrency, String... fiatCurrencies) {
+        this(name, urlTemplate, valuePath, preferredFiatCurrency, Collections.singleton(cryptoCurrency), new HashSet<String>(Arrays.asList(fiatCurrencies)));
+    }
+
+    /**
+     * Sets symbol used by the upstream for given currency in url and path placeholders.
+     * @param currency
+     * @param symbol
+     */
+    public void setSymbol(String currency, String symbol) {
+        symbols.put(currency.toUpperCase(), symbol);
+    }
+
+    /**
+     * Sets path to error indicator in the document. Rate is not returned when the indicator
+     * is present and is not 0 (or false).
+     * @param errorPath
+     */
+    public void setErrorPath(String errorPath) {
+        this.errorPath = errorPath;
+    }
+
+    /**
+     * @param sslSocketFactory used instead of the default one, for upstreams requiring specific TLS settings
+     */
+    public void setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+        this.sslSocketFactory = sslSocketFactory;
+    }
+
+    /**
+     * @param ignoreHttpErrorCodes true when the upstream returns the document (i.e. with an error indicator) also with HTTP error status
+     */
+    public void setIgnoreHttpErrorCodes(boolean ignoreHttpErrorCodes) {
+        this.ignoreHttpErrorCodes = ignoreHttpErrorCodes;
+    }
+
+    /**
+     * @param cacheTime how long in milliseconds is downloaded document used, at most 10 minutes
+     */
+    public void setCacheTime(long cacheTime) {
+        this.cacheTime = Math.min(cacheTime, MAXIMUM_CACHE_TIME);
+    }
+
+    @Override
+    public Set<String> getCryptoCurrencies() {
+        return cryptoCurrencies;
+    }
+
+    @Override
+    public Set<String> getFiatCurrencies() {
+        return fiatCurrencies;
+    }
+
+    @Override
+    public String getPreferredFiatCurrency() {
+        return preferredFiatCurrency;
+    }
+
+    @Override
+    public BigDecimal getExchangeRateLast(String cryptoCurrency, String fiatCurrency) {
+        if (cryptoCurrency == null || fiatCurrency == null) {
+            return null;
+        }
+        cryptoCurrency = cryptoCurrency.toUpperCase();
+        fiatCurrency = fiatCurrency.toUpperCase();
+        if (!cryptoCurrencies.contains(cryptoCurrency) || !fiatCurrencies.contains(fiatCurrency)) {
+            return null;
+        }
+        JsonNode document = getDocument(resolve(urlTemplate, cryptoCurrency, fiatCurrency));
+        if (document == null) {
+            return null;
+        }
+        if (errorPath != null) {
+            JsonNode error = find(document, errorPath);
+            if (error != null && error.asInt() != 0) {
+                log.debug("{} ticker error: {}", name, document);
+                return null;
+            }
+        }
+        BigDecimal result = toDecimal(find(document, resolve(valuePath, cryptoCurrency, fiatCurrency)));
+        log.debug("Called {} ticker for rate: {}_{} = {}", name, cryptoCurrency, fiatCurrency, result);
+        return result;
+    }
+
+    private JsonNode getDocument(String url) {
+        CachedDocument cached = documents.getIfPresent(url);
+        if (isFresh(cached)) {
+            return cached.document;
+        }
+        Lock lock = locks.get(url);
+        lock.lock();
+        try {
+            cached = documents.getIfPresent(url);
+            if (isFresh(cached)) {
+                return cached.document; //downloaded by another thread while we were waiting
+            }
+            JsonNode document = AsyncHttpFetcher.getInstance().getResult(AsyncHttpFetcher.getInstance().get(url, null, JSON_HANDLER, sslSocketFactory, ignoreHttpErrorCodes), url);
+            if (document != null) {
+                documents.put(url, new CachedDocument(document));
+                recordAll(url, document);
+            }
+            return document;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isFresh(CachedDocument cached) {
+        return cached != null && System.currentTimeMillis() - cached.timestamp < cacheTime;
+    }
+
+    /**
+     * Every freshly downloaded document is recorded once for all pairs it contains.
+     */
+    private void recordAll(String url, JsonNode document) {
+        for (String cryptoCurrency : cryptoCurrencies) {
+            for (String fiatCurrency : fiatCurrencies) {
+                if (url.equals(resolve(urlTemplate, cryptoCurrency, fiatCurrency))) {
+                    RateHistory.record(cryptoCurrency, fiatCurrency, toDecimal(find(document, resolve(valuePath, cryptoCurrency, fiatCurrency))));
+                }
+            }
+        }
+    }
+
+    private String resolve(String template, String cryptoCurrency, String fiatCurrency) {
+        return template
+                .replace("{crypto}", symbol(cryptoCurrency))
+                .replace("{fiat}", symbol(fiatCurrency));
+    }
+
+    private String symbol(String currency) {
+        String symbol = symbols.get(currency);
+        return symbol == null ? currency : symbol;
+    }
+
+    private static JsonNode find(JsonNode document, String path) {
+        JsonNode node = document;
+        for (String segment : path.split("\\.")) {
+            if (node == null) {
+                return null;
+            }
+            if (node.isArray()) {
+                try {
+                    node = node.get(Integer.parseInt(segment));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            } else {
+                node = node.get(segment);
+            }
+        }
+        return node;
+    }
+
+    private BigDecimal toDecimal(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        if (node.isNumber()) {
+            return node.decimalValue();
+        }
+        try {
+            return new BigDecimal(node.asText().trim());
+        } catch (NumberFormatException e) {
+            log.warn("{} ticker returned invalid rate: {}", name, node);
+            return null;
+        }
+    }
+}
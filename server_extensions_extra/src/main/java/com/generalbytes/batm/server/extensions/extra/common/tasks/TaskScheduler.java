@@ -0,0 +1,169 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.tasks;
+
+import com.generalbytes.batm.server.extensions.ITask;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs {@link ITask}s on a small scheduled pool.
+ *
+ * onCreate is called right after submission, then onDoStep is scheduled again and again after
+ * {@link ITask#getShortestTimeForNexStepInvocation()} until the task reports it is finished.
+ * Nothing sleeps between steps, so waiting tasks do not hold any thread and the number of
+ * threads does not grow with the number of pending trades.
+ *
+ * onCreate usually places an order and may block on the exchange or its rate limit, so it runs on
+ * a separate bounded pool and slow exchanges don't delay steps of other tasks. Steps must not block.
+ */
+public class TaskScheduler {
+    private static final Logger log = LoggerFactory.getLogger(TaskScheduler.class);
+
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_CREATE_THREADS = 16;
+    private static final int CREATE_QUEUE_SIZE = 1000;
+    private static final long MINIMUM_STEP_DELAY = 100;
+
+    private static final TaskScheduler instance = new TaskScheduler(DEFAULT_THREADS);
+
+    private final ScheduledExecutorService executor;
+    private final ThreadPoolExecutor createExecutor;
+
+    public TaskScheduler(int threads) {
+        this(threads, DEFAULT_CREATE_THREADS);
+    }
+
+    /**
+     * @param threads threads running steps
+     * @param createThreads threads running onCreate, which may block
+     */
+    public TaskScheduler(int threads, int createThreads) {
+        executor = Executors.newScheduledThreadPool(threads, new ThreadFactoryBuilder()
+            .setNameFormat("task-scheduler-%d")
+            .setDaemon(true)
+            .build());
+        createExecutor = new ThreadPoolExecutor(createThreads, createThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(CREATE_QUEUE_SIZE), new ThreadFactoryBuilder()
+            .setNameFormat("task-create-%d")
+            .setDaemon(true)
+            .build());
+        createExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static TaskScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts the task.
+     * @param task
+     * @return future completed with task's result when it finishes, or with null when it failed.
+     * Cancelling the future stops the task before its next step.
+     */
+    public ListenableFuture<Object> submit(final ITask task) {
+        final SettableFuture<Object> future = SettableFuture.create();
+        Runnable create = new Runnable() {
+            @Override
+            public void run() {
+                boolean created = false;
+                try {
+                    created = task.onCreate();
+                } catch (Throwable e) {
+                    log.error("Task {} failed to start", task, e);
+                }
+                if (created && !task.isFinished()) {
+                    scheduleStep(task, future);
+                } else {
+                    finish(task, future);
+                }
+            }
+        };
+        try {
+            createExecutor.execute(create);
+        } catch (RejectedExecutionException e) {
+            log.error("Task {} rejected, too many tasks are starting", task);
+            finish(task, future);
+        }
+        return future;
+    }
+
+    /**
+     * Runs the task and waits for its result. Caller's thread is the only one blocked during the wait.
+     * @param task
+     * @param timeoutMillis
+     * @return task's result or null when the task failed or did not finish in time (the task is then cancelled)
+     */
+    public Object execute(ITask task, long timeoutMillis) {
+        ListenableFuture<Object> future = submit(task);
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Task {} did not finish in {} ms", task, timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Task {} failed", task, e);
+        }
+        future.cancel(false);
+        return null;
+    }
+
+    private void scheduleStep(final ITask task, final SettableFuture<Object> future) {
+        long delay = Math.max(task.getShortestTimeForNexStepInvocation(), MINIMUM_STEP_DELAY);
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled()) {
+                    finish(task, future);
+                    return;
+                }
+                try {
+                    task.onDoStep();
+                } catch (Throwable e) {
+                    log.error("Task {} step failed", task, e);
+                }
+                if (task.isFinished()) {
+                    finish(task, future);
+                } else {
+                    scheduleStep(task, future);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void finish(ITask task, SettableFuture<Object> future) {
+        try {
+            task.onFinish();
+        } catch (Throwable e) {
+            log.error("Task {} failed to finish", task, e);
+        }
+        future.set(task.isFinished() && !task.isFailed() ? task.getResult() : null);
+    }
+}
@@ -0,0 +1,302 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.wallets;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Receiving addresses of one wallet generated ahead of time, so handing out an address doesn't wait for the wallet.
+ *
+ * Addresses are generated in the background whenever fewer than half of {@link #size} are stored and kept in a file,
+ * so unissued addresses survive restarts. A few of them are moved to an in-memory buffer from which {@link #next()}
+ * takes them. The file is rewritten without the moved addresses before they can be issued, so after a crash
+ * addresses of the buffer are skipped rather than issued twice.
+ */
+public class AddressPool {
+    private static final Logger log = LoggerFactory.getLogger(AddressPool.class);
+
+    public static final int DEFAULT_SIZE = 10;
+    private static final int READY_SIZE = 3;
+    private static final String DIRECTORY_PROPERTY = "batm.addresspools.dir";
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder()
+        .setNameFormat("address-pool-%d")
+        .setDaemon(true)
+        .build());
+
+    private static final ConcurrentMap<String, AddressPool> pools = new ConcurrentHashMap<String, AddressPool>();
+
+    private final String name;
+    private volatile Callable<String> generator;
+    private final int size;
+    private final File file;
+
+    private final Deque<String> ready = new ArrayDeque<String>();
+    private final List<String> stored = new ArrayList<String>(); //guarded by storeLock
+    private final Object storeLock = new Object();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+
+    /**
+     * Returns pool of given name, creating it when it doesn't exist yet. Wallets created several times
+     * for the same account must share one pool, otherwise they would issue the same stored addresses.
+     * @param name identifies wallet account, i.e. currency, host and account name
+     * @param generator replaces generator of an existing pool, so the latest wallet (i.e. with changed credentials) is used
+     * @return
+     */
+    public static AddressPool get(String name, Callable<String> generator) {
+        AddressPool pool = pools.get(name);
+        if (pool == null) {
+            synchronized (pools) {
+                pool = pools.get(name);
+                if (pool == null) {
+                    pool = new AddressPool(name, generator, DEFAULT_SIZE, new File(getDirectory(), toFileName(name)));
+                    pools.put(name, pool);
+                    return pool;
+                }
+            }
+        }
+        pool.generator = generator;
+        return pool;
+    }
+
+    /**
+     * @param name used in logs
+     * @param generator returns new address of the wallet or null when it fails
+     * @param size number of addresses kept generated
+     * @param file where unissued addresses are stored, null disables persistence
+     */
+    public AddressPool(String name, Callable<String> generator, int size, File file) {
+        this.name = name;
+        this.generator = generator;
+        this.size = size;
+        this.file = file;
+        synchronized (storeLock) {
+            stored.addAll(load());
+        }
+        scheduleRefill();
+    }
+
+    /**
+     * @return address that was not issued before. Generated synchronously when the pool is empty, null when that fails.
+     */
+    public String next() {
+        String address = poll();
+        if (address == null) {
+            log.debug("Address pool {} is empty, generating address", name);
+            address = generate();
+        }
+        return address;
+    }
+
+    /**
+     * Non-blocking variant of {@link #next()}. Completes immediately unless the pool is empty, then the address
+     * is generated on the pool of {@link AsyncWalletAdapter}.
+     */
+    public ListenableFuture<String> nextAsync() {
+        String address = poll();
+        if (address != null) {
+            return Futures.immediateFuture(address);
+        }
+        return AsyncWalletAdapter.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return next();
+            }
+        });
+    }
+
+    private String poll() {
+        String address;
+        synchronized (ready) {
+            address = ready.poll();
+        }
+        scheduleRefill();
+        return address;
+    }
+
+    private void scheduleRefill() {
+        if (refillScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            refill();
+                        } finally {
+                            refillScheduled.set(false);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                refillScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void refill() {
+        synchronized (storeLock) {
+            moveToReady();
+            if (stored.size() < size / 2 + 1) {
+                int generated = 0;
+                while (stored.size() < size) {
+                    String address = generate();
+                    if (address == null || stored.contains(address) || isReady(address)) {
+                        break; //wallet is failing or doesn't give new addresses, try again on next issue
+                    }
+                    stored.add(address);
+                    generated++;
+                }
+                if (generated > 0) {
+                    log.debug("Address pool {} generated {} addresses", name, generated);
+                    save();
+                }
+                moveToReady();
+            }
+        }
+    }
+
+    private void moveToReady() {
+        int missing;
+        synchronized (ready) {
+            missing = READY_SIZE - ready.size();
+        }
+        if (missing <= 0 || stored.isEmpty()) {
+            return;
+        }
+        List<String> moving = new ArrayList<String>(stored.subList(0, Math.min(missing, stored.size())));
+        stored.removeAll(moving);
+        if (!save()) {
+            stored.addAll(0, moving); //issuing addresses still in the file could issue them twice after restart
+            return;
+        }
+        synchronized (ready) {
+            ready.addAll(moving);
+        }
+    }
+
+    private boolean isReady(String address) {
+        synchronized (ready) {
+            return ready.contains(address);
+        }
+    }
+
+    private String generate() {
+        try {
+            return generator.call();
+        } catch (Exception e) {
+            log.error("Address pool " + name + " cannot generate address", e);
+            return null;
+        }
+    }
+
+    private List<String> load() {
+        List<String> result = new ArrayList<String>();
+        if (file == null || !file.exists()) {
+            return result;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !result.contains(line)) {
+                        result.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            log.debug("Address pool {} loaded {} addresses from {}", name, result.size(), file);
+        } catch (IOException e) {
+            log.error("Address pool " + name + " cannot be loaded from " + file, e);
+        }
+        return result;
+    }
+
+    /**
+     * @return false when the file couldn't be written
+     */
+    private boolean save() {
+        if (file == null) {
+            return true;
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.exists()) {
+            directory.mkdirs();
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                Writer writer = new OutputStreamWriter(out, "UTF-8");
+                for (String address : stored) {
+                    writer.write(address);
+                    writer.write('\n');
+                }
+                writer.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+                throw new IOException("Cannot rename " + tmpFile + " to " + file);
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Address pool " + name + " cannot be saved to " + file, e);
+            return false;
+        }
+    }
+
+    private static File getDirectory() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null) {
+            directory = System.getProperty("user.home") + File.separator + ".batm" + File.separator + "addresspools";
+        }
+        return new File(directory);
+    }
+
+    private static String toFileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_") + ".txt";
+    }
+}
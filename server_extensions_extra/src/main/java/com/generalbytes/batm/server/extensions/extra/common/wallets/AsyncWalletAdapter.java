@@ -0,0 +1,126 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.wallets;
+
+import com.generalbytes.batm.server.extensions.IWallet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Async view of a blocking wallet.
+ *
+ * Blocking calls of all adapted wallets run on one bounded pool, so the number of threads doesn't grow with
+ * the number of calls in flight; calls over the limit wait in a bounded queue and fail when it is full.
+ */
+public class AsyncWalletAdapter implements IAsyncWallet {
+    private static final int THREADS = 8;
+    private static final int QUEUE_CAPACITY = 1000;
+
+    private static final ListeningExecutorService executor = MoreExecutors.listeningDecorator(new ThreadPoolExecutor(THREADS, THREADS,
+        60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactoryBuilder()
+        .setNameFormat("async-wallet-%d")
+        .setDaemon(true)
+        .build()));
+
+    private final IWallet wallet;
+
+    private AsyncWalletAdapter(IWallet wallet) {
+        this.wallet = wallet;
+    }
+
+    /**
+     * @return the wallet itself when it implements {@link IAsyncWallet}, adapter otherwise
+     */
+    public static IAsyncWallet of(IWallet wallet) {
+        if (wallet instanceof IAsyncWallet) {
+            return (IAsyncWallet) wallet;
+        }
+        return new AsyncWalletAdapter(wallet);
+    }
+
+    /**
+     * @return adapter running blocking methods of the wallet on the shared pool even when the wallet implements
+     * {@link IAsyncWallet}. Used by wallets having only some of the calls natively asynchronous.
+     */
+    public static IAsyncWallet blocking(IWallet wallet) {
+        return new AsyncWalletAdapter(wallet);
+    }
+
+    /**
+     * Runs blocking wallet call on the shared bounded pool.
+     * @return future failed with {@link RejectedExecutionException} when too many calls are waiting
+     */
+    public static <T> ListenableFuture<T> submit(Callable<T> call) {
+        try {
+            return executor.submit(call);
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ListenableFuture<String> sendCoinsAsync(final String destinationAddress, final BigDecimal amount, final String cryptoCurrency, final String description) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return wallet.sendCoins(destinationAddress, amount, cryptoCurrency, description);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getCryptoAddressAsync(final String cryptoCurrency) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return wallet.getCryptoAddress(cryptoCurrency);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<BigDecimal> getCryptoBalanceAsync(final String cryptoCurrency) {
+        return submit(new Callable<BigDecimal>() {
+            @Override
+            public BigDecimal call() throws Exception {
+                return wallet.getCryptoBalance(cryptoCurrency);
+            }
+        });
+    }
+
+    @Override
+    public Set<String> getCryptoCurrencies() {
+        return wallet.getCryptoCurrencies();
+    }
+
+    @Override
+    public String getPreferredCryptoCurrency() {
+        return wallet.getPreferredCryptoCurrency();
+    }
+}
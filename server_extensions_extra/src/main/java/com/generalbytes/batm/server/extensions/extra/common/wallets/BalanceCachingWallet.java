@@ -0,0 +1,316 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.wallets;
+
+import com.generalbytes.batm.server.extensions.IWallet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Wallet decorator keeping balances for a short time, so liquidity checks of all machines and dashboard
+ * refreshes share one remote call.
+ *
+ * Balances are kept per account ({@link IAccountWallet#getAccountId()}), so wallets created several times
+ * for the same account share them. Concurrent callers share one load in flight, no thread waits for a lock.
+ * Cached balance is dropped after every {@link #sendCoins} and by {@link #invalidateAll(String)}, which daemon
+ * wallets call when their payout gets confirmed. Balance loaded while an invalidation happened is returned to
+ * its callers but not cached. Async balance of a fresh cache completes without using any thread.
+ */
+public class BalanceCachingWallet implements IWallet, IAsyncWallet {
+    private static final Logger log = LoggerFactory.getLogger(BalanceCachingWallet.class);
+
+    public static final long DEFAULT_TTL = 10 * 1000; //10sec
+
+    private static final Set<BalanceCachingWallet> instances = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<BalanceCachingWallet, Boolean>()));
+    private static final ConcurrentMap<String, AccountCache> accountCaches = new ConcurrentHashMap<String, AccountCache>();
+
+    private final IWallet wallet;
+    private final AccountCache cache;
+
+    /**
+     * Balances of one account.
+     */
+    private static class AccountCache {
+        private final long ttl;
+        private final Map<String, BigDecimal> balances = new HashMap<String, BigDecimal>(); //guarded by this
+        private final Map<String, Long> loadedAt = new HashMap<String, Long>(); //guarded by this
+        private final Map<String, ListenableFuture<BigDecimal>> loading = new HashMap<String, ListenableFuture<BigDecimal>>(); //guarded by this
+        private final Map<ListenableFuture<BigDecimal>, Long> loadGenerations = new HashMap<ListenableFuture<BigDecimal>, Long>(); //guarded by this
+        private long generation; //guarded by this
+
+        private AccountCache(long ttl) {
+            this.ttl = ttl;
+        }
+
+        private synchronized BigDecimal getIfFresh(String cryptoCurrency) {
+            Long time = loadedAt.get(cryptoCurrency);
+            if (time != null && System.currentTimeMillis() - time < ttl) {
+                return balances.get(cryptoCurrency);
+            }
+            return null;
+        }
+
+        /**
+         * @return load already in flight or null when the given one was registered and caller has to complete it
+         */
+        private synchronized ListenableFuture<BigDecimal> startLoading(String cryptoCurrency, ListenableFuture<BigDecimal> future) {
+            ListenableFuture<BigDecimal> inFlight = loading.get(cryptoCurrency);
+            if (inFlight != null) {
+                return inFlight;
+            }
+            loading.put(cryptoCurrency, future);
+            loadGenerations.put(future, generation);
+            return null;
+        }
+
+        private synchronized void finishLoading(String cryptoCurrency, ListenableFuture<BigDecimal> future, BigDecimal balance) {
+            Long loadGeneration = loadGenerations.remove(future);
+            if (loading.get(cryptoCurrency) == future) {
+                loading.remove(cryptoCurrency);
+            }
+            if (balance != null && loadGeneration != null && loadGeneration == generation) {
+                balances.put(cryptoCurrency, balance);
+                loadedAt.put(cryptoCurrency, System.currentTimeMillis());
+            }
+        }
+
+        private synchronized void invalidate() {
+            generation++;
+            balances.clear();
+            loadedAt.clear();
+            loading.clear(); //callers from now on start a new load
+        }
+    }
+
+    public BalanceCachingWallet(IWallet wallet) {
+        this(wallet, DEFAULT_TTL);
+    }
+
+    public BalanceCachingWallet(IWallet wallet, long ttl) {
+        this.wallet = wallet;
+        this.cache = getCache(wallet, ttl);
+        instances.add(this);
+    }
+
+    private static AccountCache getCache(IWallet wallet, long ttl) {
+        String accountId = wallet instanceof IAccountWallet ? ((IAccountWallet) wallet).getAccountId() : null;
+        if (accountId == null) {
+            return new AccountCache(ttl);
+        }
+        AccountCache cache = accountCaches.get(accountId);
+        if (cache == null) {
+            AccountCache created = new AccountCache(ttl);
+            cache = accountCaches.putIfAbsent(accountId, created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return wallets created so far and still in use
+     */
+    public static Set<BalanceCachingWallet> getInstances() {
+        synchronized (instances) {
+            return new HashSet<BalanceCachingWallet>(instances);
+        }
+    }
+
+    /**
+     * Drops cached balances of all wallets of the cryptocurrency. Meant to be called when the wallet is
+     * notified about new transaction or block.
+     * @param cryptoCurrency
+     */
+    public static void invalidateAll(String cryptoCurrency) {
+        Set<BalanceCachingWallet> wallets;
+        synchronized (instances) {
+            wallets = new HashSet<BalanceCachingWallet>(instances);
+        }
+        for (BalanceCachingWallet wallet : wallets) {
+            if (wallet.getCryptoCurrencies().contains(cryptoCurrency)) {
+                wallet.invalidate();
+            }
+        }
+    }
+
+    /**
+     * @return cached balance, loaded when missing or older than ttl. Concurrent callers wait for one load.
+     */
+    @Override
+    public BigDecimal getCryptoBalance(String cryptoCurrency) {
+        BigDecimal result = cache.getIfFresh(cryptoCurrency);
+        if (result != null) {
+            return result;
+        }
+        SettableFuture<BigDecimal> loading = SettableFuture.create();
+        ListenableFuture<BigDecimal> inFlight = cache.startLoading(cryptoCurrency, loading);
+        if (inFlight == null) {
+            load(cryptoCurrency, loading);
+            inFlight = loading;
+        }
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Cannot get balance of " + cryptoCurrency, e);
+        }
+        return null;
+    }
+
+    /**
+     * Joins load in flight, if any. Wallet with own async balance (i.e. {@link FailoverWallet}) is asked
+     * directly, other wallets are asked on the pool of {@link AsyncWalletAdapter}.
+     */
+    @Override
+    public ListenableFuture<BigDecimal> getCryptoBalanceAsync(final String cryptoCurrency) {
+        BigDecimal result = cache.getIfFresh(cryptoCurrency);
+        if (result != null) {
+            return Futures.immediateFuture(result);
+        }
+        final SettableFuture<BigDecimal> loading = SettableFuture.create();
+        ListenableFuture<BigDecimal> inFlight = cache.startLoading(cryptoCurrency, loading);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        if (wallet instanceof IAsyncWallet) {
+            Futures.addCallback(((IAsyncWallet) wallet).getCryptoBalanceAsync(cryptoCurrency), new FutureCallback<BigDecimal>() {
+                @Override
+                public void onSuccess(BigDecimal balance) {
+                    cache.finishLoading(cryptoCurrency, loading, balance);
+                    loading.set(balance);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    cache.finishLoading(cryptoCurrency, loading, null);
+                    loading.setException(t);
+                }
+            });
+        } else {
+            ListenableFuture<Object> submitted = AsyncWalletAdapter.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    load(cryptoCurrency, loading);
+                    return null;
+                }
+            });
+            Futures.addCallback(submitted, new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                }
+
+                @Override
+                public void onFailure(Throwable t) { //rejected by the pool
+                    cache.finishLoading(cryptoCurrency, loading, null);
+                    loading.setException(t);
+                }
+            });
+        }
+        return loading;
+    }
+
+    /**
+     * Loads the balance on the calling thread and completes the load.
+     */
+    private void load(String cryptoCurrency, SettableFuture<BigDecimal> loading) {
+        BigDecimal balance = null;
+        try {
+            balance = wallet.getCryptoBalance(cryptoCurrency);
+        } catch (Throwable t) {
+            cache.finishLoading(cryptoCurrency, loading, null);
+            loading.setException(t);
+            return;
+        }
+        cache.finishLoading(cryptoCurrency, loading, balance);
+        loading.set(balance);
+    }
+
+    @Override
+    public String sendCoins(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        try {
+            return wallet.sendCoins(destinationAddress, amount, cryptoCurrency, description);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public ListenableFuture<String> sendCoinsAsync(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        ListenableFuture<String> result = AsyncWalletAdapter.of(wallet).sendCoinsAsync(destinationAddress, amount, cryptoCurrency, description);
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                invalidate();
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * Forces next {@link #getCryptoBalance(String)} to load the balance.
+     */
+    public void invalidate() {
+        cache.invalidate();
+    }
+
+    @Override
+    public String getCryptoAddress(String cryptoCurrency) {
+        return wallet.getCryptoAddress(cryptoCurrency);
+    }
+
+    @Override
+    public ListenableFuture<String> getCryptoAddressAsync(String cryptoCurrency) {
+        return AsyncWalletAdapter.of(wallet).getCryptoAddressAsync(cryptoCurrency);
+    }
+
+    @Override
+    public Set<String> getCryptoCurrencies() {
+        return wallet.getCryptoCurrencies();
+    }
+
+    @Override
+    public String getPreferredCryptoCurrency() {
+        return wallet.getPreferredCryptoCurrency();
+    }
+
+    /**
+     * @return decorated wallet
+     */
+    public IWallet getWallet() {
+        return wallet;
+    }
+}
@@ -0,0 +1,506 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.wallets;
+
+import com.generalbytes.batm.server.extensions.IWallet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wallet routing calls to the healthiest of several backend wallets (i.e. local bitcoind and Bitcore proxy).
+ *
+ * Latency and error rate of calls reaching a backend are tracked per backend as moving averages and backends are
+ * also probed periodically, so a slow or failing backend drops down and a recovered one comes back. Calls answered
+ * without reaching the backend (address from its pool) are not measured, payouts count only to the error rate
+ * because they may wait for a payout batch. Backends are distinct wallets, so the balance is the largest balance
+ * of a single backend, which is what one payout can spend. All backends are asked at once and a backend not
+ * answering within about twice its usual latency counts with its last known balance. Addresses are hedged: when
+ * the best backend doesn't answer in that time or fails, the next one is asked too and the first address wins.
+ * Payouts go to the healthiest backend with enough known balance and are never repeated on another backend,
+ * because a failed payout may still have been sent.
+ *
+ * Backends should not cache balances themselves, otherwise cache hits make their latency meaningless. Cache
+ * the balance of this wallet instead.
+ */
+public class FailoverWallet implements IWallet, IAccountWallet, IAsyncWallet {
+    private static final Logger log = LoggerFactory.getLogger(FailoverWallet.class);
+
+    private static final long PROBE_INTERVAL = 30 * 1000; //30sec
+    private static final long MINIMUM_LATE_DELAY = 200;
+    private static final double LATENCY_SMOOTHING = 0.3;
+    private static final double ERROR_SMOOTHING = 0.2;
+    private static final double ERROR_PENALTY = 20; //score of a backend failing every call is 21x its latency
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("failover-wallet-%d")
+        .setDaemon(true)
+        .build());
+
+    private final List<Backend> backends = new ArrayList<Backend>();
+    private final String accountId;
+
+    private static class Backend {
+        private final IWallet wallet;
+        private final IAsyncWallet asyncWallet;
+        private final int order;
+
+        private double latency; //milliseconds, guarded by this
+        private double errorRate; //guarded by this
+        private final List<Long> callsInFlight = new ArrayList<Long>(); //start times, guarded by this
+        private final Map<String, BigDecimal> balances = new HashMap<String, BigDecimal>(); //guarded by this
+
+        private Backend(IWallet wallet, int order) {
+            this.wallet = wallet;
+            this.asyncWallet = AsyncWalletAdapter.of(wallet);
+            this.order = order;
+        }
+
+        private synchronized long callStarted() {
+            long start = System.nanoTime();
+            callsInFlight.add(start);
+            return start;
+        }
+
+        private synchronized void callFinished(long start, boolean success) {
+            callsInFlight.remove(Long.valueOf(start));
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            latency = latency == 0 ? millis : latency + LATENCY_SMOOTHING * (millis - latency);
+            errorRate = errorRate + ERROR_SMOOTHING * ((success ? 0 : 1) - errorRate);
+        }
+
+        /**
+         * @return expected latency penalized by errors, call taking longer than usual counts already while in flight
+         */
+        /**
+         * Records outcome of a call whose duration says nothing about the backend.
+         */
+        private synchronized void outcome(boolean success) {
+            errorRate = errorRate + ERROR_SMOOTHING * ((success ? 0 : 1) - errorRate);
+        }
+
+        private synchronized double getScore() {
+            double expectedLatency = latency;
+            if (!callsInFlight.isEmpty()) {
+                expectedLatency = Math.max(expectedLatency, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - callsInFlight.get(0)));
+            }
+            return expectedLatency * (1 + ERROR_PENALTY * errorRate);
+        }
+
+        private synchronized long getLateDelay() {
+            return Math.max(MINIMUM_LATE_DELAY, (long) (2 * latency));
+        }
+
+        private synchronized void setBalance(String cryptoCurrency, BigDecimal balance) {
+            balances.put(cryptoCurrency, balance);
+        }
+
+        private synchronized BigDecimal getBalance(String cryptoCurrency) {
+            return balances.get(cryptoCurrency);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return wallet.getClass().getSimpleName() + "#" + order + " (latency " + (long) latency + "ms, errors " + (int) (errorRate * 100) + "%)";
+        }
+    }
+
+    /**
+     * @param wallets backends in order of preference used until their health is known
+     */
+    public FailoverWallet(List<IWallet> wallets) {
+        StringBuilder id = new StringBuilder("failover");
+        for (IWallet wallet : wallets) {
+            backends.add(new Backend(wallet, backends.size()));
+            String backendId = wallet instanceof IAccountWallet ? ((IAccountWallet) wallet).getAccountId() : null;
+            if (backendId == null) {
+                id = null;
+            } else if (id != null) {
+                id.append('|').append(backendId);
+            }
+        }
+        accountId = id == null ? null : id.toString();
+        Probe.start(this);
+    }
+
+    @Override
+    public String sendCoins(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        return get(sendCoinsAsync(destinationAddress, amount, cryptoCurrency, description));
+    }
+
+    @Override
+    public String getCryptoAddress(String cryptoCurrency) {
+        return get(getCryptoAddressAsync(cryptoCurrency));
+    }
+
+    @Override
+    public BigDecimal getCryptoBalance(String cryptoCurrency) {
+        return get(getCryptoBalanceAsync(cryptoCurrency));
+    }
+
+    @Override
+    public ListenableFuture<String> sendCoinsAsync(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        List<Backend> ranked = rank(cryptoCurrency);
+        if (ranked.isEmpty()) {
+            log.error("Wallet error: unknown cryptocurrency: " + cryptoCurrency);
+            return Futures.immediateFuture(null);
+        }
+        Backend selected = ranked.get(0);
+        for (Backend backend : ranked) {
+            BigDecimal balance = backend.getBalance(cryptoCurrency);
+            if (balance == null || balance.compareTo(amount) >= 0) {
+                selected = backend;
+                break;
+            }
+        }
+        log.debug("Sending {} {} using {}", amount, cryptoCurrency, selected);
+        return measureOutcome(selected, selected.asyncWallet.sendCoinsAsync(destinationAddress, amount, cryptoCurrency, description));
+    }
+
+    @Override
+    public ListenableFuture<String> getCryptoAddressAsync(String cryptoCurrency) {
+        return new FirstAddress(rank(cryptoCurrency), cryptoCurrency).start();
+    }
+
+    @Override
+    public ListenableFuture<BigDecimal> getCryptoBalanceAsync(String cryptoCurrency) {
+        return new LargestBalance(rank(cryptoCurrency), cryptoCurrency).start();
+    }
+
+    @Override
+    public Set<String> getCryptoCurrencies() {
+        Set<String> result = new LinkedHashSet<String>();
+        for (Backend backend : backends) {
+            result.addAll(backend.wallet.getCryptoCurrencies());
+        }
+        return result;
+    }
+
+    @Override
+    public String getPreferredCryptoCurrency() {
+        return backends.isEmpty() ? null : backends.get(0).wallet.getPreferredCryptoCurrency();
+    }
+
+    /**
+     * @return backend wallets in order of preference
+     */
+    public List<IWallet> getWallets() {
+        List<IWallet> result = new ArrayList<IWallet>();
+        for (Backend backend : backends) {
+            result.add(backend.wallet);
+        }
+        return result;
+    }
+
+    /**
+     * @return ids of all backends, null when some backend can't be identified
+     */
+    @Override
+    public String getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * @return backends supporting the cryptocurrency, healthiest first
+     */
+    private List<Backend> rank(String cryptoCurrency) {
+        List<Backend> result = new ArrayList<Backend>();
+        for (Backend backend : backends) {
+            if (backend.wallet.getCryptoCurrencies().contains(cryptoCurrency)) {
+                result.add(backend);
+            }
+        }
+        final Map<Backend, Double> scores = new HashMap<Backend, Double>();
+        for (Backend backend : result) {
+            scores.put(backend, backend.getScore());
+        }
+        Collections.sort(result, new Comparator<Backend>() {
+            @Override
+            public int compare(Backend b1, Backend b2) {
+                int result = Double.compare(scores.get(b1), scores.get(b2));
+                return result != 0 ? result : b1.order - b2.order;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Records duration and outcome of the call to backend's health, null result counts as failure. Call completed
+     * right away didn't reach the backend and is not recorded.
+     */
+    private static <T> ListenableFuture<T> measure(final Backend backend, ListenableFuture<T> future) {
+        if (future.isDone()) {
+            return future;
+        }
+        final long start = backend.callStarted();
+        Futures.addCallback(future, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                backend.callFinished(start, result != null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                backend.callFinished(start, false);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Records only outcome of the call to backend's health, null result counts as failure.
+     */
+    private static <T> ListenableFuture<T> measureOutcome(final Backend backend, ListenableFuture<T> future) {
+        Futures.addCallback(future, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                backend.outcome(result != null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                backend.outcome(false);
+            }
+        });
+        return future;
+    }
+
+    private static <T> T get(ListenableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Wallet call failed", e);
+        }
+        return null;
+    }
+
+    /**
+     * Address asked from the best backend and from the next ones when it is late or fails, the first address wins.
+     * Address issued by a late backend is not used.
+     */
+    private static class FirstAddress {
+        private final List<Backend> ranked;
+        private final String cryptoCurrency;
+        private final SettableFuture<String> result = SettableFuture.create();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private FirstAddress(List<Backend> ranked, String cryptoCurrency) {
+            this.ranked = ranked;
+            this.cryptoCurrency = cryptoCurrency;
+        }
+
+        private ListenableFuture<String> start() {
+            if (!askNext()) {
+                result.set(null);
+            }
+            return result;
+        }
+
+        /**
+         * @return false when all backends were already asked
+         */
+        private boolean askNext() {
+            int index = next.getAndIncrement();
+            if (index >= ranked.size() || result.isDone()) {
+                return false;
+            }
+            final Backend backend = ranked.get(index);
+            pending.incrementAndGet();
+            Futures.addCallback(measure(backend, backend.asyncWallet.getCryptoAddressAsync(cryptoCurrency)), new FutureCallback<String>() {
+                @Override
+                public void onSuccess(String address) {
+                    if (address != null) {
+                        result.set(address);
+                    }
+                    done(address != null);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    done(false);
+                }
+            });
+            if (index + 1 < ranked.size() && !result.isDone()) {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!result.isDone()) {
+                            log.debug("Address from {} is late, asking next backend", backend);
+                            askNext();
+                        }
+                    }
+                }, backend.getLateDelay(), TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+
+        private void done(boolean success) {
+            if (!success) {
+                askNext(); //before decrementing, so pending doesn't drop to zero while another backend is being asked
+            }
+            if (pending.decrementAndGet() == 0 && next.get() >= ranked.size()) {
+                result.set(null);
+            }
+        }
+    }
+
+    /**
+     * Balances asked from all backends at once, the largest one wins. Backends late or failing count with their
+     * last known balance.
+     */
+    private static class LargestBalance {
+        private final List<Backend> ranked;
+        private final String cryptoCurrency;
+        private final SettableFuture<BigDecimal> result = SettableFuture.create();
+        private final Map<Backend, BigDecimal> answers = new HashMap<Backend, BigDecimal>(); //guarded by this
+
+        private LargestBalance(List<Backend> ranked, String cryptoCurrency) {
+            this.ranked = ranked;
+            this.cryptoCurrency = cryptoCurrency;
+        }
+
+        private ListenableFuture<BigDecimal> start() {
+            if (ranked.isEmpty()) {
+                result.set(null);
+                return result;
+            }
+            long lateDelay = 0;
+            for (final Backend backend : ranked) {
+                lateDelay = Math.max(lateDelay, backend.getLateDelay());
+                Futures.addCallback(measure(backend, backend.asyncWallet.getCryptoBalanceAsync(cryptoCurrency)), new FutureCallback<BigDecimal>() {
+                    @Override
+                    public void onSuccess(BigDecimal balance) {
+                        if (balance != null) {
+                            backend.setBalance(cryptoCurrency, balance);
+                        }
+                        answered(backend, balance);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        answered(backend, null);
+                    }
+                });
+            }
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!result.isDone()) {
+                        log.debug("Some backends are late with balance of {}, using their last known balance", cryptoCurrency);
+                        complete();
+                    }
+                }
+            }, lateDelay, TimeUnit.MILLISECONDS);
+            return result;
+        }
+
+        private void answered(Backend backend, BigDecimal balance) {
+            boolean all;
+            synchronized (this) {
+                answers.put(backend, balance != null ? balance : backend.getBalance(cryptoCurrency));
+                all = answers.size() == ranked.size();
+            }
+            if (all) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            BigDecimal largest = null;
+            synchronized (this) {
+                for (Backend backend : ranked) {
+                    BigDecimal balance = answers.containsKey(backend) ? answers.get(backend) : backend.getBalance(cryptoCurrency);
+                    if (balance != null && (largest == null || balance.compareTo(largest) > 0)) {
+                        largest = balance;
+                    }
+                }
+            }
+            result.set(largest);
+        }
+    }
+
+    /**
+     * Periodically asks all backends for their balance to keep their health up to date. Holds the wallet
+     * weakly and stops when the wallet is no longer used.
+     */
+    private static class Probe implements Runnable {
+        private final WeakReference<FailoverWallet> wallet;
+        private volatile ScheduledFuture<?> future;
+
+        private Probe(FailoverWallet wallet) {
+            this.wallet = new WeakReference<FailoverWallet>(wallet);
+        }
+
+        private static void start(FailoverWallet wallet) {
+            Probe probe = new Probe(wallet);
+            probe.future = scheduler.scheduleWithFixedDelay(probe, PROBE_INTERVAL, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            FailoverWallet failoverWallet = wallet.get();
+            if (failoverWallet == null) {
+                future.cancel(false);
+                return;
+            }
+            try {
+                for (final Backend backend : failoverWallet.backends) {
+                    final String cryptoCurrency = backend.wallet.getPreferredCryptoCurrency();
+                    Futures.addCallback(measure(backend, backend.asyncWallet.getCryptoBalanceAsync(cryptoCurrency)), new FutureCallback<BigDecimal>() {
+                        @Override
+                        public void onSuccess(BigDecimal balance) {
+                            if (balance != null) {
+                                backend.setBalance(cryptoCurrency, balance);
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                        }
+                    });
+                }
+            } catch (Throwable e) {
+                log.error("Probing of wallet backends failed", e); //exception would stop the probing
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.wallets;
+
+import com.generalbytes.batm.server.extensions.IWallet;
+
+/**
+ * Wallet able to identify its account. Wallets are created several times for the same account, state kept
+ * per account (cached balances, address pools, payout queues) is shared by them using this id.
+ */
+public interface IAccountWallet extends IWallet {
+    /**
+     * @return id of the account, i.e. currency, host and account name, or null when it can't be identified
+     */
+    public String getAccountId();
+}
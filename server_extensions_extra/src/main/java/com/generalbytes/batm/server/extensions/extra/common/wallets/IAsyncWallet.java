@@ -0,0 +1,41 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.wallets;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+/**
+ * Non-blocking variant of {@link com.generalbytes.batm.server.extensions.IWallet}.
+ *
+ * Futures complete with the same values the blocking methods return, null meaning failure.
+ * Use {@link AsyncWalletAdapter#of} to get async view of any wallet.
+ */
+public interface IAsyncWallet {
+    public ListenableFuture<String> sendCoinsAsync(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description);
+
+    public ListenableFuture<String> getCryptoAddressAsync(String cryptoCurrency);
+
+    public ListenableFuture<BigDecimal> getCryptoBalanceAsync(String cryptoCurrency);
+
+    public Set<String> getCryptoCurrencies();
+
+    public String getPreferredCryptoCurrency();
+}
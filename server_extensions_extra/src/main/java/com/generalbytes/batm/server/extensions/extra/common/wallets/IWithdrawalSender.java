@@ -0,0 +1,31 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.wallets;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+public interface IWithdrawalSender {
+    /**
+     * Sends coins to several destinations, in one transaction when the wallet supports it.
+     * @param cryptoCurrency
+     * @param amountsByAddress
+     * @return result per destination address, missing or null result means the withdrawal to the address failed
+     */
+    public Map<String, String> send(String cryptoCurrency, Map<String, BigDecimal> amountsByAddress);
+}
@@ -0,0 +1,193 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+package com.generalbytes.batm.server.extensions.extra.common.wallets;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of payouts of one wallet account.
+ *
+ * Payouts of the same currency requested within a short window are handed to {@link IWithdrawalSender}
+ * together, payouts to the same address are merged into one. Batches are sent one after another, so
+ * while a batch is being sent new payouts queue up and leave together with the next batch instead of
+ * each of them competing for the withdrawal rate limit.
+ */
+public class WithdrawalBatcher {
+    private static final Logger log = LoggerFactory.getLogger(WithdrawalBatcher.class);
+
+    public static final long DEFAULT_WINDOW = 2 * 1000; //2sec
+
+    private static final ConcurrentMap<String, WithdrawalBatcher> batchers = new ConcurrentHashMap<String, WithdrawalBatcher>();
+
+    private final String name;
+    private volatile IWithdrawalSender sender;
+    private volatile long window;
+    private final ExecutorService executor;
+
+    private final Map<String, List<Payout>> queued = new HashMap<String, List<Payout>>();
+
+    private static class Payout {
+        private final String address;
+        private final BigDecimal amount;
+        private final SettableFuture<String> result = SettableFuture.create();
+
+        private Payout(String address, BigDecimal amount) {
+            this.address = address;
+            this.amount = amount;
+        }
+    }
+
+    /**
+     * Returns batcher of given name, creating it when it doesn't exist yet. Wallets created several times
+     * for the same account must share one batcher, so their payouts leave together and no thread is left
+     * behind by each wallet. Sender and window of an existing batcher are replaced by the given ones, so
+     * the latest wallet (i.e. with changed credentials) is used.
+     * @param name identifies wallet account, i.e. currency, host and account name
+     * @param sender
+     * @param window milliseconds
+     * @return
+     */
+    public static WithdrawalBatcher get(String name, IWithdrawalSender sender, long window) {
+        WithdrawalBatcher batcher = batchers.get(name);
+        if (batcher == null) {
+            synchronized (batchers) {
+                batcher = batchers.get(name);
+                if (batcher == null) {
+                    batcher = new WithdrawalBatcher(name, sender, window);
+                    batchers.put(name, batcher);
+                    return batcher;
+                }
+            }
+        }
+        batcher.sender = sender;
+        batcher.window = window;
+        return batcher;
+    }
+
+    public WithdrawalBatcher(String name, IWithdrawalSender sender) {
+        this(name, sender, DEFAULT_WINDOW);
+    }
+
+    public WithdrawalBatcher(String name, IWithdrawalSender sender, long window) {
+        this.name = name;
+        this.sender = sender;
+        this.window = window;
+        executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("withdrawals-" + name + "-%d")
+            .setDaemon(true)
+            .build());
+    }
+
+    /**
+     * Queues the payout.
+     * @return future completed with result of the withdrawal or with null when it failed
+     */
+    public ListenableFuture<String> submit(final String cryptoCurrency, String destinationAddress, BigDecimal amount) {
+        Payout payout = new Payout(destinationAddress, amount);
+        synchronized (queued) {
+            List<Payout> payouts = queued.get(cryptoCurrency);
+            if (payouts == null) {
+                payouts = new ArrayList<Payout>();
+                queued.put(cryptoCurrency, payouts);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        send(cryptoCurrency);
+                    }
+                });
+            }
+            payouts.add(payout);
+        }
+        return payout.result;
+    }
+
+    /**
+     * Removes the payout from the queue unless it is already being sent.
+     * @param cryptoCurrency
+     * @param future future returned by {@link #submit}
+     * @return true when the payout was removed and will not be sent
+     */
+    public boolean cancel(String cryptoCurrency, ListenableFuture<String> future) {
+        synchronized (queued) {
+            List<Payout> payouts = queued.get(cryptoCurrency);
+            if (payouts != null) {
+                for (Iterator<Payout> it = payouts.iterator(); it.hasNext(); ) {
+                    Payout payout = it.next();
+                    if (payout.result == future) {
+                        it.remove();
+                        payout.result.cancel(false);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the window, takes everything queued for the currency and sends it.
+     */
+    private void send(String cryptoCurrency) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(window);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Payout> payouts;
+        synchronized (queued) {
+            payouts = queued.remove(cryptoCurrency);
+        }
+        if (payouts == null || payouts.isEmpty()) {
+            return;
+        }
+
+        Map<String, BigDecimal> amountsByAddress = new LinkedHashMap<String, BigDecimal>();
+        for (Payout payout : payouts) {
+            BigDecimal amount = amountsByAddress.get(payout.address);
+            amountsByAddress.put(payout.address, amount == null ? payout.amount : amount.add(payout.amount));
+        }
+        log.info("{} sending {} payouts of {} to {} addresses", name, payouts.size(), cryptoCurrency, amountsByAddress.size());
+
+        Map<String, String> results = null;
+        try {
+            results = sender.send(cryptoCurrency, amountsByAddress);
+        } catch (Throwable e) {
+            log.error("{} withdrawal of {} failed", name, cryptoCurrency, e);
+        }
+        for (Payout payout : payouts) {
+            payout.result.set(results == null ? null : results.get(payout.address));
+        }
+    }
+}
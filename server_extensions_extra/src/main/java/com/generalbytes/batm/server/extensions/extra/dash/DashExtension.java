@@ -18,11 +18,13 @@
 package com.generalbytes.batm.server.extensions.extra.dash;
 
 import com.generalbytes.batm.server.extensions.*;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
 import com.generalbytes.batm.server.extensions.extra.dash.sources.FixPriceRateSource;
 //import com.generalbytes.batm.server.extensions.extra.dogecoin.sources.chainso.ChainSoRateSource;
 //import com.generalbytes.batm.server.extensions.extra.dogecoin.wallets.blockio.BlockIOWallet;
 import com.generalbytes.batm.server.extensions.extra.dash.sources.cddash.CryptodiggersRateSource;
-import com.generalbytes.batm.server.extensions.extra.dash.wallets.dashd.DashRPCWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.PayoutBatchingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.RPCWallet;
 import com.generalbytes.batm.server.extensions.watchlist.IWatchList;
 
 import java.math.BigDecimal;
@@ -51,7 +53,7 @@ public class DashExtension implements IExtension{
             String walletType = st.nextToken();
 
             if ("dashd".equalsIgnoreCase(walletType)) {
-                //"dashd:protocol:user:password:ip:port:accountname"
+                //"dashd:protocol:user:password:ip:port:accountname[:payoutbatchseconds]"
 
                 String protocol = st.nextToken();
                 String username = st.nextToken();
@@ -62,11 +64,11 @@ public class DashExtension implements IExtension{
                 if (st.hasMoreTokens()) {
                     accountName = st.nextToken();
                 }
+                Long payoutBatchWindow = PayoutBatchingWallet.parseWindow(st.hasMoreTokens() ? st.nextToken() : null);
 
-
-                if (protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
+                if (payoutBatchWindow != null && protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
                     String rpcURL = protocol +"://" + username +":" + password + "@" + hostname +":" + port;
-                    return new DashRPCWallet(rpcURL,accountName);
+                    return new BalanceCachingWallet(PayoutBatchingWallet.wrap(new RPCWallet(rpcURL, accountName, ICurrencies.DASH), payoutBatchWindow));
                 }
             }
 
@@ -18,10 +18,12 @@
 package com.generalbytes.batm.server.extensions.extra.dogecoin;
 
 import com.generalbytes.batm.server.extensions.*;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
 import com.generalbytes.batm.server.extensions.extra.dogecoin.sources.FixPriceRateSource;
 import com.generalbytes.batm.server.extensions.extra.dogecoin.sources.chainso.ChainSoRateSource;
 import com.generalbytes.batm.server.extensions.extra.dogecoin.wallets.blockio.BlockIOWallet;
-import com.generalbytes.batm.server.extensions.extra.dogecoin.wallets.dogecoind.DogecoindRPCWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.PayoutBatchingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.RPCWallet;
 import com.generalbytes.batm.server.extensions.watchlist.IWatchList;
 
 import java.math.BigDecimal;
@@ -56,10 +58,10 @@ public class DogecoinExtension implements IExtension{
                 if (st.hasMoreTokens()) {
                     priority = st.nextToken();
                 }
-                return new BlockIOWallet(apikey,pin, priority);
+                return new BalanceCachingWallet(new BlockIOWallet(apikey,pin, priority));
 
             }else if ("dogecoind".equalsIgnoreCase(walletType)) {
-                //"dogecoind:protocol:user:password:ip:port:accountname"
+                //"dogecoind:protocol:user:password:ip:port:accountname[:payoutbatchseconds]"
 
                 String protocol = st.nextToken();
                 String username = st.nextToken();
@@ -70,11 +72,11 @@ public class DogecoinExtension implements IExtension{
                 if (st.hasMoreTokens()) {
                     accountName = st.nextToken();
                 }
+                Long payoutBatchWindow = PayoutBatchingWallet.parseWindow(st.hasMoreTokens() ? st.nextToken() : null);
 
-
-                if (protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
+                if (payoutBatchWindow != null && protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
                     String rpcURL = protocol +"://" + username +":" + password + "@" + hostname +":" + port;
-                    return new DogecoindRPCWallet(rpcURL,accountName);
+                    return new BalanceCachingWallet(PayoutBatchingWallet.wrap(new RPCWallet(rpcURL, accountName, ICurrencies.DOGE), payoutBatchWindow));
                 }
             }
 
@@ -2,6 +2,8 @@ package com.generalbytes.batm.server.extensions.extra.dogecoin.sources.chainso;
 
 import com.generalbytes.batm.server.extensions.ICurrencies;
 import com.generalbytes.batm.server.extensions.IRateSource;
+import com.generalbytes.batm.server.extensions.extra.common.http.UpstreamGuard;
+import com.generalbytes.batm.server.extensions.extra.common.sources.RateHistory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import si.mazi.rescu.RestProxyFactory;
@@ -25,7 +27,7 @@ public class ChainSoRateSource implements IRateSource{
 
 
     public ChainSoRateSource() {
-        api = RestProxyFactory.createProxy(IChainSo.class, "https://chain.so");
+        api = UpstreamGuard.wrap(IChainSo.class, RestProxyFactory.createProxy(IChainSo.class, "https://chain.so"), "https://chain.so");
     }
 
     @Override
@@ -43,6 +45,7 @@ public class ChainSoRateSource implements IRateSource{
             BigDecimal amount = rateAmounts.get(key);
             if (amount == null) {
                 BigDecimal result = getExchangeRateLastSync(cryptoCurrency, fiatCurrency);
+                RateHistory.record(cryptoCurrency, fiatCurrency, result);
                 log.debug("Called chain.so exchange for rate: " + key + " = " + result);
                 rateAmounts.put(key,result);
                 rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
@@ -54,6 +57,7 @@ public class ChainSoRateSource implements IRateSource{
                 }else{
                     //do the job;
                     BigDecimal result = getExchangeRateLastSync(cryptoCurrency, fiatCurrency);
+                    RateHistory.record(cryptoCurrency, fiatCurrency, result);
                     log.debug("Called chain.so exchange for rate: " + key + " = " + result);
                     rateAmounts.put(key,result);
                     rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
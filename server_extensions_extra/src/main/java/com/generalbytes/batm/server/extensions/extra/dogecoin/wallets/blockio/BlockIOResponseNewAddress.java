@@ -0,0 +1,67 @@
+package com.generalbytes.batm.server.extensions.extra.dogecoin.wallets.blockio;
+
+public class BlockIOResponseNewAddress {
+    private String status;
+    private BlockIOData data;
+
+    public BlockIOResponseNewAddress() {
+    }
+
+    public class BlockIOData {
+        private String network;
+        private int user_id;
+        private String address;
+        private String label;
+
+        public BlockIOData() {
+        }
+
+        public String getNetwork() {
+            return network;
+        }
+
+        public int getUser_id() {
+            return user_id;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public void setNetwork(String network) {
+            this.network = network;
+        }
+
+        public void setUser_id(int user_id) {
+            this.user_id = user_id;
+        }
+
+        public void setAddress(String address) {
+            this.address = address;
+        }
+
+        public void setLabel(String label) {
+            this.label = label;
+        }
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public BlockIOData getData() {
+        return data;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public void setData(BlockIOData data) {
+        this.data = data;
+    }
+}
@@ -3,10 +3,19 @@ package com.generalbytes.batm.server.extensions.extra.dogecoin.wallets.blockio;
 import com.generalbytes.batm.server.extensions.ICurrencies;
 import com.generalbytes.batm.server.extensions.IWallet;
 
+import com.generalbytes.batm.server.extensions.extra.common.wallets.AddressPool;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.AsyncWalletAdapter;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.IAccountWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.IAsyncWallet;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import si.mazi.rescu.RestProxyFactory;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static com.generalbytes.batm.server.extensions.extra.dogecoin.wallets.blockio.IBlockIO.PRIORITY_HIGH;
 import static com.generalbytes.batm.server.extensions.extra.dogecoin.wallets.blockio.IBlockIO.PRIORITY_LOW;
@@ -15,12 +24,14 @@ import static com.generalbytes.batm.server.extensions.extra.dogecoin.wallets.blo
 /**
  * Created by b00lean on 8/11/14.
  */
-public class BlockIOWallet implements IWallet {
+public class BlockIOWallet implements IWallet, IAccountWallet, IAsyncWallet {
     private String apiKey;
+    private String accountId;
     private String pin;
     private String priority;
 
     private IBlockIO api;
+    private AddressPool addressPool;
 
     public BlockIOWallet(String apiKey, String pin, String priority) {
         this.apiKey = apiKey;
@@ -39,6 +50,17 @@ public class BlockIOWallet implements IWallet {
             this.priority = PRIORITY_LOW;
         }
         api = RestProxyFactory.createProxy(IBlockIO.class, "https://block.io");
+        accountId = "blockio-" + Hashing.sha256().hashString(apiKey, Charsets.UTF_8).toString().substring(0, 16);
+        addressPool = AddressPool.get(accountId, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                BlockIOResponseNewAddress response = api.getNewAddress(BlockIOWallet.this.apiKey);
+                if (response != null && response.getData() != null) {
+                    return response.getData().getAddress();
+                }
+                return null;
+            }
+        });
     }
 
     @Override
@@ -60,18 +82,30 @@ public class BlockIOWallet implements IWallet {
         if (!(cryptoCurrency.equalsIgnoreCase(ICurrencies.DOGE) || cryptoCurrency.equalsIgnoreCase(ICurrencies.BTC) || cryptoCurrency.equalsIgnoreCase(ICurrencies.LTC))) {
             return null;
         }
-        try {
-            BlockIOResponseAddresses response = api.getAddresses(apiKey);
-            if (response != null && response.getData() != null && response.getData().getAddresses() != null && response.getData().getAddresses().length> 0) {
-                return response.getData().getAddresses()[0].getAddress();
-            }
-        }catch (Throwable t) {
-            t.printStackTrace();
-        }
+        return addressPool.next();
+    }
 
-        return null;
+
+    @Override
+    public ListenableFuture<String> sendCoinsAsync(String destinationAddress, BigDecimal amount, String cryptoCurrency, String description) {
+        return AsyncWalletAdapter.blocking(this).sendCoinsAsync(destinationAddress, amount, cryptoCurrency, description);
     }
 
+    /**
+     * Completes without waiting for the wallet unless its address pool is empty.
+     */
+    @Override
+    public ListenableFuture<String> getCryptoAddressAsync(String cryptoCurrency) {
+        if (!(cryptoCurrency.equalsIgnoreCase(ICurrencies.DOGE) || cryptoCurrency.equalsIgnoreCase(ICurrencies.BTC) || cryptoCurrency.equalsIgnoreCase(ICurrencies.LTC))) {
+            return Futures.immediateFuture(null);
+        }
+        return addressPool.nextAsync();
+    }
+
+    @Override
+    public ListenableFuture<BigDecimal> getCryptoBalanceAsync(String cryptoCurrency) {
+        return AsyncWalletAdapter.blocking(this).getCryptoBalanceAsync(cryptoCurrency);
+    }
 
     @Override
     public BigDecimal getCryptoBalance(String cryptoCurrency) {
@@ -107,4 +141,8 @@ public class BlockIOWallet implements IWallet {
         return null;
     }
 
+    @Override
+    public String getAccountId() {
+        return accountId;
+    }
 }
@@ -18,6 +18,10 @@ public interface IBlockIO {
     @Path("get_my_addresses/?api_key={apikey}")
     BlockIOResponseAddresses getAddresses(@PathParam("apikey") String apikey);
 
+    @GET
+    @Path("get_new_address/?api_key={apikey}")
+    BlockIOResponseNewAddress getNewAddress(@PathParam("apikey") String apikey);
+
     @GET
     @Path("get_balance/?api_key={apikey}")
     BlockIOResponseBalance getBalance(@PathParam("apikey") String apikey);
@@ -18,105 +18,18 @@
 package com.generalbytes.batm.server.extensions.extra.groestlcoin.sources;
 
 import com.generalbytes.batm.server.extensions.ICurrencies;
-import com.generalbytes.batm.server.extensions.IRateSource;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import si.mazi.rescu.RestProxyFactory;
+import com.generalbytes.batm.server.extensions.extra.common.sources.TickerRateSource;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
 
-public class GroestlcoinTickerRateSource implements IRateSource{
-    private static final Logger log = LoggerFactory.getLogger(GroestlcoinTickerRateSource.class);
-
-    private static HashMap<String,BigDecimal> rateAmounts = new HashMap<String, BigDecimal>();
-    private static HashMap<String,Long> rateTimes = new HashMap<String, Long>();
-    private static final long MAXIMUM_ALLOWED_TIME_OFFSET = 30 * 1000; //30sec
-
-    private IGroestlcoinTickerRateAPI api;
+public class GroestlcoinTickerRateSource extends TickerRateSource {
 
     public GroestlcoinTickerRateSource() {
-        api = RestProxyFactory.createProxy(IGroestlcoinTickerRateAPI.class, "https://markets.groestlcoin.com");
-    }
-
-    @Override
-    public BigDecimal getExchangeRateLast(String cryptoCurrency, String fiatCurrency) {
-        if (!(ICurrencies.GRS.equalsIgnoreCase(cryptoCurrency))) {
-            return null;
-        }
-        if (!(ICurrencies.EUR.equalsIgnoreCase(fiatCurrency))) {
-            return null;
-        }
-
-        String key = cryptoCurrency +"_" + fiatCurrency;
-        synchronized (rateAmounts) {
-            long now  = System.currentTimeMillis();
-            BigDecimal amount = rateAmounts.get(key);
-            if (amount == null) {
-                BigDecimal result = getExchangeRateLastSync(cryptoCurrency, fiatCurrency);
-                log.debug("Called GroestlcoinTicker exchange for rate: " + key + " = " + result);
-                rateAmounts.put(key,result);
-                rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
-                return result;
-            }else {
-                Long expirationTime = rateTimes.get(key);
-                if (expirationTime > now) {
-                    return rateAmounts.get(key);
-                }else{
-                    //do the job;
-                    BigDecimal result = getExchangeRateLastSync(cryptoCurrency, fiatCurrency);
-                    log.debug("Called GroestlcoinTicker exchange for rate: " + key + " = " + result);
-                    rateAmounts.put(key,result);
-                    rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
-                    return result;
-                }
-            }
-        }
-
-    }
-
-    private BigDecimal getExchangeRateLastSync(String cryptoCurrency, String fiatCurrency) {
-        if (!(ICurrencies.GRS.equalsIgnoreCase(cryptoCurrency))) {
-            return null;
-        }
-        if (!(ICurrencies.EUR.equalsIgnoreCase(fiatCurrency))) {
-            return null;
-        }
-        GroestlcoinTickerResponse ticker = api.getTicker();
-        if (ticker != null && ticker.getEUR() != null) {
-			if (ICurrencies.EUR.equalsIgnoreCase(fiatCurrency)){
-                return ticker.getEUR().getSell15m();
-            }
-            return null;
-        }
-        return null;
-    }
-
-    @Override
-    public Set<String> getCryptoCurrencies() {
-        Set<String> result = new HashSet<String>();
-        result.add(ICurrencies.GRS);
-        return result;
-    }
-
-    @Override
-    public Set<String> getFiatCurrencies() {
-        Set<String> result = new HashSet<String>();
-        result.add(ICurrencies.EUR);
-        return result;
-    }
-
-    @Override
-    public String getPreferredFiatCurrency() {
-        return ICurrencies.EUR;
+        super("GroestlcoinTicker", "https://markets.groestlcoin.com/api/v1/ticker", "{fiat}.sell15m", ICurrencies.EUR, ICurrencies.GRS, ICurrencies.EUR);
     }
 
     public static void main(String[] args) {
         BigDecimal exchangeRateLast = (new GroestlcoinTickerRateSource()).getExchangeRateLast("GRS", "EUR");
         System.out.println("exchangeRateLast = " + exchangeRateLast);
     }
-
-
 }
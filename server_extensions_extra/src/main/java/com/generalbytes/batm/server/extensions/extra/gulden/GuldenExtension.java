@@ -18,9 +18,11 @@
 package com.generalbytes.batm.server.extensions.extra.gulden;
 
 import com.generalbytes.batm.server.extensions.*;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
 import com.generalbytes.batm.server.extensions.extra.gulden.sources.FixPriceRateSource;
 import com.generalbytes.batm.server.extensions.extra.gulden.sources.GuldenTickerRateSource;
-import com.generalbytes.batm.server.extensions.extra.gulden.wallets.guldend.GuldendRPCWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.PayoutBatchingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.RPCWallet;
 import com.generalbytes.batm.server.extensions.watchlist.IWatchList;
 
 import java.math.BigDecimal;
@@ -46,7 +48,7 @@ public class GuldenExtension implements IExtension{
             String walletType = st.nextToken();
 
             if ("guldend".equalsIgnoreCase(walletType)) {
-                //"guldend:protocol:user:password:ip:port:accountname"
+                //"guldend:protocol:user:password:ip:port:accountname[:payoutbatchseconds]"
 
                 String protocol = st.nextToken();
                 String username = st.nextToken();
@@ -57,11 +59,11 @@ public class GuldenExtension implements IExtension{
                 if (st.hasMoreTokens()) {
                     accountName = st.nextToken();
                 }
+                Long payoutBatchWindow = PayoutBatchingWallet.parseWindow(st.hasMoreTokens() ? st.nextToken() : null);
 
-
-                if (protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
+                if (payoutBatchWindow != null && protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
                     String rpcURL = protocol +"://" + username +":" + password + "@" + hostname +":" + port;
-                    return new GuldendRPCWallet(rpcURL,accountName);
+                    return new BalanceCachingWallet(PayoutBatchingWallet.wrap(new RPCWallet(rpcURL, accountName, ICurrencies.NLG), payoutBatchWindow));
                 }
             }
         }
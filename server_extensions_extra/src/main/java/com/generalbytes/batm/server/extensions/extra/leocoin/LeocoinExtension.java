@@ -18,8 +18,10 @@
 package com.generalbytes.batm.server.extensions.extra.leocoin;
 
 import com.generalbytes.batm.server.extensions.*;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
 import com.generalbytes.batm.server.extensions.extra.leocoin.sources.FixPriceRateSource;
-import com.generalbytes.batm.server.extensions.extra.leocoin.wallets.leocoind.LeocoindRPCWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.PayoutBatchingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.RPCWallet;
 import com.generalbytes.batm.server.extensions.watchlist.IWatchList;
 
 import java.math.BigDecimal;
@@ -45,7 +47,7 @@ public class LeocoinExtension implements IExtension{
             String walletType = st.nextToken();
 
             if ("leocoind".equalsIgnoreCase(walletType)) {
-                //"leocoind:protocol:user:password:ip:port:accountname"
+                //"leocoind:protocol:user:password:ip:port:accountname[:payoutbatchseconds]"
 
                 String protocol = st.nextToken();
                 String username = st.nextToken();
@@ -56,11 +58,11 @@ public class LeocoinExtension implements IExtension{
                 if (st.hasMoreTokens()) {
                     accountName = st.nextToken();
                 }
+                Long payoutBatchWindow = PayoutBatchingWallet.parseWindow(st.hasMoreTokens() ? st.nextToken() : null);
 
-
-                if (protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
+                if (payoutBatchWindow != null && protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
                     String rpcURL = protocol +"://" + username +":" + password + "@" + hostname +":" + port;
-                    return new LeocoindRPCWallet(rpcURL,accountName);
+                    return new BalanceCachingWallet(PayoutBatchingWallet.wrap(new RPCWallet(rpcURL, accountName, ICurrencies.LEO), payoutBatchWindow));
                 }
             }
         }
@@ -19,6 +19,8 @@ package com.generalbytes.batm.server.extensions.extra.litecoin.sources.btce;
 
 import com.generalbytes.batm.server.extensions.ICurrencies;
 import com.generalbytes.batm.server.extensions.IRateSource;
+import com.generalbytes.batm.server.extensions.extra.common.http.UpstreamGuard;
+import com.generalbytes.batm.server.extensions.extra.common.sources.RateHistory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import si.mazi.rescu.RestProxyFactory;
@@ -47,7 +49,7 @@ public class BTCeRateSource implements IRateSource{
     }
 
     public BTCeRateSource() {
-        api = RestProxyFactory.createProxy(IBTCeRateAPI.class, "https://btc-e.com");
+        api = UpstreamGuard.wrap(IBTCeRateAPI.class, RestProxyFactory.createProxy(IBTCeRateAPI.class, "https://btc-e.com"), "https://btc-e.com");
     }
 
     @Override
@@ -65,6 +67,7 @@ public class BTCeRateSource implements IRateSource{
             BigDecimal amount = rateAmounts.get(key);
             if (amount == null) {
                 BigDecimal result = getExchangeRateLastSync(cryptoCurrency, fiatCurrency);
+                RateHistory.record(cryptoCurrency, fiatCurrency, result);
                 log.debug("Called BTC-e exchange for rate: " + key + " = " + result);
                 rateAmounts.put(key,result);
                 rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
@@ -76,6 +79,7 @@ public class BTCeRateSource implements IRateSource{
                 }else{
                     //do the job;
                     BigDecimal result = getExchangeRateLastSync(cryptoCurrency, fiatCurrency);
+                    RateHistory.record(cryptoCurrency, fiatCurrency, result);
                     log.debug("Called BTC-e exchange for rate: " + key + " = " + result);
                     rateAmounts.put(key,result);
                     rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
@@ -1,9 +1,11 @@
 package com.generalbytes.batm.server.extensions.extra.nubits;
 
 import com.generalbytes.batm.server.extensions.*;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
 import com.generalbytes.batm.server.extensions.extra.nubits.NubitsAddressValidator;
 import com.generalbytes.batm.server.extensions.extra.nubits.sources.FixPriceRateSource;
-import com.generalbytes.batm.server.extensions.extra.nubits.wallets.nud.NubitsRPCWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.PayoutBatchingWallet;
+import com.generalbytes.batm.server.extensions.extra.common.rpc.RPCWallet;
 import com.generalbytes.batm.server.extensions.watchlist.IWatchList;
 
 import java.math.BigDecimal;
@@ -28,7 +30,7 @@ public class NubitsExtension implements IExtension{
             String walletType = st.nextToken();
 
             if ("nud".equalsIgnoreCase(walletType)) {
-                //"nud:protocol:user:password:ip:port:accountname"
+                //"nud:protocol:user:password:ip:port:accountname[:payoutbatchseconds]"
 
                 String protocol = st.nextToken();
                 String username = st.nextToken();
@@ -39,11 +41,11 @@ public class NubitsExtension implements IExtension{
                 if (st.hasMoreTokens()) {
                     accountName = st.nextToken();
                 }
+                Long payoutBatchWindow = PayoutBatchingWallet.parseWindow(st.hasMoreTokens() ? st.nextToken() : null);
 
-
-                if (protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
+                if (payoutBatchWindow != null && protocol != null && username != null && password != null && hostname !=null && port != null && accountName != null) {
                     String rpcURL = protocol +"://" + username +":" + password + "@" + hostname +":" + port;
-                    return new NubitsRPCWallet(rpcURL,accountName);
+                    return new BalanceCachingWallet(PayoutBatchingWallet.wrap(new RPCWallet(rpcURL, accountName, ICurrencies.NBT), payoutBatchWindow));
                 }
             }
         }
@@ -19,6 +19,7 @@
 package com.generalbytes.batm.server.extensions.extra.nxt;
 
 import com.generalbytes.batm.server.extensions.*;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
 import com.generalbytes.batm.server.extensions.extra.nxt.sources.FixPriceRateSource;
 import com.generalbytes.batm.server.extensions.extra.nxt.sources.poloniex.PoloniexRateSource;
 import com.generalbytes.batm.server.extensions.extra.nxt.wallets.mynxt.MynxtWallet;
@@ -55,7 +56,7 @@ public class NXTExtension implements IExtension{
 
 
                 if (email != null && password != null && masterPassword !=null) {
-                    return new MynxtWallet(email,password,masterPassword,accountId);
+                    return new BalanceCachingWallet(new MynxtWallet(email,password,masterPassword,accountId));
                 }
             }
         }
@@ -20,6 +20,10 @@ package com.generalbytes.batm.server.extensions.extra.nxt.sources.poloniex;
 import com.generalbytes.batm.server.extensions.ICurrencies;
 import com.generalbytes.batm.server.extensions.IRateSource;
 import com.generalbytes.batm.server.extensions.extra.bitcoin.sources.yahoo.YahooFinanceRateSource;
+import com.generalbytes.batm.server.extensions.extra.common.http.AsyncHttpFetcher;
+import com.generalbytes.batm.server.extensions.extra.common.http.UpstreamGuard;
+import com.generalbytes.batm.server.extensions.extra.common.sources.RateHistory;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import si.mazi.rescu.RestProxyFactory;
@@ -28,6 +32,7 @@ import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 public class PoloniexRateSource implements IRateSource{
     private static final Logger log = LoggerFactory.getLogger(PoloniexRateSource.class);
@@ -46,7 +51,7 @@ public class PoloniexRateSource implements IRateSource{
         }
         this.preferedFiatCurrency = preferedFiatCurrency;
         btcRs = new YahooFinanceRateSource(preferedFiatCurrency);
-        api = RestProxyFactory.createProxy(IPoloniexAPI.class, "https://poloniex.com");
+        api = UpstreamGuard.wrap(IPoloniexAPI.class, RestProxyFactory.createProxy(IPoloniexAPI.class, "https://poloniex.com"), "https://poloniex.com");
     }
 
     @Override
@@ -78,6 +83,7 @@ public class PoloniexRateSource implements IRateSource{
             BigDecimal amount = rateAmounts.get(key);
             if (amount == null) {
                 BigDecimal result = getExchangeRateLastSync(cryptoCurrency, fiatCurrency);
+                RateHistory.record(cryptoCurrency, fiatCurrency, result);
                 log.debug("Called bitcoinaverage exchange for rate: " + key + " = " + result);
                 rateAmounts.put(key,result);
                 rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
@@ -89,6 +95,7 @@ public class PoloniexRateSource implements IRateSource{
                 }else{
                     //do the job;
                     BigDecimal result = getExchangeRateLastSync(cryptoCurrency, fiatCurrency);
+                    RateHistory.record(cryptoCurrency, fiatCurrency, result);
                     log.debug("Called bitcoinaverage exchange for rate: " + key + " = " + result);
                     rateAmounts.put(key,result);
                     rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
@@ -99,10 +106,18 @@ public class PoloniexRateSource implements IRateSource{
 
     }
 
-    private BigDecimal getExchangeRateLastSync(String cryptoCurrency, String fiatCurrency) {
+    private BigDecimal getExchangeRateLastSync(String cryptoCurrency, final String fiatCurrency) {
         if (!ICurrencies.NXT.equalsIgnoreCase(cryptoCurrency)) {
             return null; //unsupported currency
         }
+        final AsyncHttpFetcher fetcher = AsyncHttpFetcher.getInstance();
+        //BTC price is fetched while order book is being downloaded
+        ListenableFuture<BigDecimal> btcRateFuture = fetcher.submit(new Callable<BigDecimal>() {
+            @Override
+            public BigDecimal call() throws Exception {
+                return btcRs.getExchangeRateLast(ICurrencies.BTC, fiatCurrency);
+            }
+        });
         OrderBookResponse orderBookResponse = api.returnOrderBook("returnOrderBook", "BTC_NXT", 10000);
         if (orderBookResponse != null) {
             BigDecimal[][] asks = orderBookResponse.getAsks();
@@ -122,14 +137,14 @@ public class PoloniexRateSource implements IRateSource{
 
 //            System.out.println("tradableLimit = " + tradableLimit);;
             if (tradableLimit != null) {
-                BigDecimal btcRate = btcRs.getExchangeRateLast(ICurrencies.BTC, fiatCurrency);
+                BigDecimal btcRate = fetcher.getResult(btcRateFuture, "BTC rate for " + fiatCurrency);
                 if (btcRate != null) {
                     return btcRate.multiply(tradableLimit);
                 }
             }
             return null;
         }
-
+        btcRateFuture.cancel(false);
         return null;
     }
 }
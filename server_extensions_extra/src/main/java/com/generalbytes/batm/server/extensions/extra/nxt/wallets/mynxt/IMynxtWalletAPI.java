@@ -44,5 +44,5 @@ public interface IMynxtWalletAPI {
 
     @POST
     @Path("/nxt")
-    public SendResponse send2(@QueryParam("email") String email, @QueryParam("password") String password, @QueryParam("masterPassword") String masterPassword, @QueryParam("accountId") String accountId, @QueryParam("recipient") String recipient, @QueryParam("amountNQT") BigDecimal amountNQT,@QueryParam("feeNQT") BigDecimal feeNQT, @QueryParam("deadline") long deadline, @QueryParam("requestType") String requestType);
+    public SendResponse send2(@QueryParam("email") String email, @QueryParam("password") String password, @QueryParam("masterPassword") String masterPassword, @QueryParam("accountId") String accountId, @QueryParam("recipient") String recipient, @QueryParam("amountNQT") long amountNQT,@QueryParam("feeNQT") long feeNQT, @QueryParam("deadline") long deadline, @QueryParam("requestType") String requestType);
 }
@@ -20,6 +20,7 @@ package com.generalbytes.batm.server.extensions.extra.nxt.wallets.mynxt;
 
 import com.generalbytes.batm.server.extensions.ICurrencies;
 import com.generalbytes.batm.server.extensions.IWallet;
+import com.generalbytes.batm.server.extensions.extra.common.amounts.CoinAmount;
 import com.generalbytes.batm.server.extensions.extra.nxt.NXTAddressValidator;
 import com.generalbytes.batm.server.extensions.extra.nxt.wallets.mynxt.dto.*;
 import org.slf4j.Logger;
@@ -33,8 +34,7 @@ import java.util.Set;
 
 public class MynxtWallet implements IWallet{
     private static final Logger log = LoggerFactory.getLogger("batm.master.MynxtWallet");
-    private static final BigDecimal NQT = new BigDecimal("100000000");
-    private static final BigDecimal DEFAULT_FEE_IN_NXT = new BigDecimal(1);
+    private static final CoinAmount DEFAULT_FEE_IN_NXT = CoinAmount.of(BigDecimal.ONE, CoinAmount.NQT_DECIMALS);
 
     private String email;
     private String password;
@@ -104,7 +104,7 @@ public class MynxtWallet implements IWallet{
                 if (balanceNQT == null) {
                     return BigDecimal.ZERO;
                 }else{
-                    return new BigDecimal(balanceNQT).divide(NQT);
+                    return CoinAmount.ofUnits(Long.parseLong(balanceNQT), CoinAmount.NQT_DECIMALS).toBigDecimal();
                 }
             }else{
                 log.debug("No response received.");
@@ -130,7 +130,7 @@ public class MynxtWallet implements IWallet{
             recipient = recipientInt.toString();
         }
 
-        SendResponse res = api.send2(email, password, masterPassword, accId, recipient, amount.multiply(NQT).stripTrailingZeros(), DEFAULT_FEE_IN_NXT.multiply(NQT).stripTrailingZeros(), 1440, "sendMoney");
+        SendResponse res = api.send2(email, password, masterPassword, accId, recipient, CoinAmount.of(amount, CoinAmount.NQT_DECIMALS).getUnits(), DEFAULT_FEE_IN_NXT.getUnits(), 1440, "sendMoney");
         if (res != null) {
             log.debug("Transaction " + res.getTransaction() + " sent.");
             return res.getTransaction();
@@ -26,6 +26,7 @@ import com.generalbytes.batm.server.extensions.IPaperWalletGenerator;
 import com.generalbytes.batm.server.extensions.IPaymentProcessor;
 import com.generalbytes.batm.server.extensions.IRateSource;
 import com.generalbytes.batm.server.extensions.IWallet;
+import com.generalbytes.batm.server.extensions.extra.common.wallets.BalanceCachingWallet;
 import com.generalbytes.batm.server.extensions.extra.tokencoin.sources.FixPriceRateSource;
 import com.generalbytes.batm.server.extensions.extra.tokencoin.wallets.paperwallet.TokencoinPaperWalletGenerator;
 import com.generalbytes.batm.server.extensions.extra.tokencoin.wallets.tokencoind.TokenWallet;
@@ -59,7 +60,7 @@ public class TKNExtension implements IExtension{
 
 
                 if (host != null && portn != null ) {
-                    return new TokenWallet(host, port, accountid);
+                    return new BalanceCachingWallet(new TokenWallet(host, port, accountid));
                 }
             }
         }
@@ -17,136 +17,32 @@
  ************************************************************************************/
 package com.generalbytes.batm.server.extensions.extra.worldcoin.sources.cd;
 
-import com.generalbytes.batm.server.extensions.extra.worldcoin.sources.cd.*;
 import com.generalbytes.batm.server.extensions.ICurrencies;
-import com.generalbytes.batm.server.extensions.IRateSource;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.KeyManagementException;
-import si.mazi.rescu.RestProxyFactory;
-import si.mazi.rescu.ClientConfig;
-
-import java.math.BigDecimal;
-import java.util.*;
+import com.generalbytes.batm.server.extensions.extra.common.http.CompatSSLSocketFactory;
+import com.generalbytes.batm.server.extensions.extra.common.sources.TickerRateSource;
 
-public class CryptodiggersRateSource implements IRateSource{
-    private static final Logger log = LoggerFactory.getLogger(CryptodiggersRateSource.class);
+import javax.net.ssl.SSLSocketFactory;
 
-    private static HashMap<String,BigDecimal> rateAmounts = new HashMap<String, BigDecimal>();
-    private static HashMap<String,Long> rateTimes = new HashMap<String, Long>();
-    private static final long MAXIMUM_ALLOWED_TIME_OFFSET = 30 * 1000; //30sec
+public class CryptodiggersRateSource extends TickerRateSource {
+    private static final String CD_WDC = "7";
+    private static final String CD_USD = "2";
+    private static final String CD_EUR = "1";
 
-    private String preferedFiatCurrency = ICurrencies.USD;
-    private ICryptodiggersRateAPI api;
-
-    public CryptodiggersRateSource(String preferedFiatCurrency) {
-        this();
-        if (ICurrencies.EUR.equalsIgnoreCase(preferedFiatCurrency)) {
-            this.preferedFiatCurrency = ICurrencies.EUR;
-        }
-        if (ICurrencies.USD.equalsIgnoreCase(preferedFiatCurrency)) {
-            this.preferedFiatCurrency = ICurrencies.USD;
-        }
-    }
+    //the host accepts only TLSv1.2 with TLS_RSA_WITH_AES_128_CBC_SHA256, not offered by default on Java 7
+    private static final SSLSocketFactory SSL_SOCKET_FACTORY = CompatSSLSocketFactory.create();
 
     public CryptodiggersRateSource() {
-	final ClientConfig config = new ClientConfig();
-        try {
-	    SSLContext sslcontext=SSLContext.getInstance("TLS");
-            sslcontext.init(null,null,null);
-            final CompatSSLSocketFactory socketFactory = new CompatSSLSocketFactory(sslcontext.getSocketFactory());
-            config.setSslSocketFactory(socketFactory);
-            config.setIgnoreHttpErrorCodes(true);
-            api = RestProxyFactory.createProxy(ICryptodiggersRateAPI.class, "https://www.cryptodiggers.eu", config);
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (KeyManagementException e) {
-            e.printStackTrace();
-        }
-
-        //api = RestProxyFactory.createProxy(ICryptodiggersRateAPI.class, "https://www.cryptodiggers.eu");
-    }
-
-    @Override
-    public BigDecimal getExchangeRateLast(String cryptoCurrency, String fiatCurrency) {
-        if (!(ICurrencies.BTC.equalsIgnoreCase(cryptoCurrency) || ICurrencies.WDC.equalsIgnoreCase(cryptoCurrency))) {
-            return null;
-        }
-        if (!(ICurrencies.USD.equalsIgnoreCase(fiatCurrency) || ICurrencies.EUR.equalsIgnoreCase(fiatCurrency))) {
-            return null;
-        }
-
-        String key = cryptoCurrency +"_" + fiatCurrency;
-        synchronized (rateAmounts) {
-	    
-            long now  = System.currentTimeMillis();
-            BigDecimal amount = rateAmounts.get(key);
-            if (amount == null) {
-                BigDecimal result = getExchangeRateLastSync(cryptoCurrency,fiatCurrency);
-                log.debug("Called Cryptodiggers ticker for rate: " + key + " = " + result);
-                rateAmounts.put(key,result);
-                rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
-                return result;
-            }else {
-                Long expirationTime = rateTimes.get(key);
-                if (expirationTime > now) {
-                    return rateAmounts.get(key);
-                }else{
-                    //do the job;
-                    BigDecimal result = getExchangeRateLastSync(cryptoCurrency,fiatCurrency);
-                    log.debug("Called Cryptodiggers ticker for rate: " + key + " = " + result);
-                    rateAmounts.put(key,result);
-                    rateTimes.put(key,now+MAXIMUM_ALLOWED_TIME_OFFSET);
-                    return result;
-                }
-            }
-        }
-
+        this(ICurrencies.USD);
     }
 
-    private BigDecimal getExchangeRateLastSync(String cryptoCurrency, String fiatCurrency) {
-	String cd_fiatCurrency;
-        cd_fiatCurrency="2";
-        if(ICurrencies.USD.equalsIgnoreCase(fiatCurrency)){
-            cd_fiatCurrency="2";
-        }
-        if(ICurrencies.EUR.equalsIgnoreCase(fiatCurrency)){
-            cd_fiatCurrency="1";
-        }
-        if (!(ICurrencies.BTC.equalsIgnoreCase(cryptoCurrency) || ICurrencies.WDC.equalsIgnoreCase(cryptoCurrency))) {
-            return null;
-        }
-        if (!(ICurrencies.USD.equalsIgnoreCase(fiatCurrency) || ICurrencies.EUR.equalsIgnoreCase(fiatCurrency))) {
-            return null;
-        }
-        CryptodiggersResponse ticker = api.getTicker("7",cd_fiatCurrency);
-        if (ticker != null && ticker.geterror() == 0) {
-            return ticker.getexch_rate_buy();
-        }
-        return null;
-    }
-
-    @Override
-    public Set<String> getCryptoCurrencies() {
-        Set<String> result = new HashSet<String>();
-        //result.add(ICurrencies.BTC);
-	result.add(ICurrencies.WDC);
-        return result;
-    }
-
-    @Override
-    public Set<String> getFiatCurrencies() {
-        Set<String> result = new HashSet<String>();
-        result.add(ICurrencies.USD);
-        result.add(ICurrencies.EUR);
-        return result;
-    }
-
-    @Override
-    public String getPreferredFiatCurrency() {
-        return preferedFiatCurrency;
+    public CryptodiggersRateSource(String preferedFiatCurrency) {
+        super("Cryptodiggers", "https://www.cryptodiggers.eu/api/api.php?a=get_exch_rate&public=1&currency={fiat}&currency_crypto={crypto}", "exch_rate_buy",
+            ICurrencies.EUR.equalsIgnoreCase(preferedFiatCurrency) ? ICurrencies.EUR : ICurrencies.USD, ICurrencies.WDC, ICurrencies.USD, ICurrencies.EUR);
+        setSymbol(ICurrencies.WDC, CD_WDC);
+        setSymbol(ICurrencies.USD, CD_USD);
+        setSymbol(ICurrencies.EUR, CD_EUR);
+        setErrorPath("error");
+        setSslSocketFactory(SSL_SOCKET_FACTORY);
+        setIgnoreHttpErrorCodes(true);
     }
 }
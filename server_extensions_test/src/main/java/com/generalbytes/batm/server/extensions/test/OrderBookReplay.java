@@ -0,0 +1,48 @@
+/*************************************************************************************
+ * Copyright (C) 2015 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+
+package com.generalbytes.batm.server.extensions.test;
+
+import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.LiveOrderBook;
+import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.OrderBookSnapshot;
+import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.ReplayOrderBookUpdateSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Replays recorded order book feed (see {@link ReplayOrderBookUpdateSource}) into {@link LiveOrderBook}
+ * and prints the prices after every event.
+ *
+ * Run from server_extensions_test after build:
+ * java -cp "dist/*:libs/*:../server_extensions_extra/dist/*:../server_extensions_extra/libs/*:../server_extensions_api/dist/*" com.generalbytes.batm.server.extensions.test.OrderBookReplay file
+ */
+public class OrderBookReplay {
+
+    public static void main(String[] args) throws IOException {
+        ReplayOrderBookUpdateSource source = new ReplayOrderBookUpdateSource(new File(args[0]));
+        LiveOrderBook book = new LiveOrderBook(source, "BTC", "USD");
+        book.start();
+        while (source.play(1) > 0) {
+            OrderBookSnapshot snapshot = book.getSnapshot();
+            System.out.println("sequence = " + book.getSequence() + " synced = " + book.isSynced()
+                + (snapshot == null ? "" : " buy 1 = " + snapshot.getBuyPrice(BigDecimal.ONE) + " sell 1 = " + snapshot.getSellPrice(BigDecimal.ONE)));
+        }
+    }
+}
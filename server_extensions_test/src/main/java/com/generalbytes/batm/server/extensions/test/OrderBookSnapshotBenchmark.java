@@ -0,0 +1,160 @@
+/*************************************************************************************
+ * Copyright (C) 2014-2016 GENERAL BYTES s.r.o. All rights reserved.
+ *
+ * This software may be distributed and modified under the terms of the GNU
+ * General Public License version 2 (GPL2) as published by the Free Software
+ * Foundation and appearing in the file GPL2.TXT included in the packaging of
+ * this file. Please note that GPL2 Section 2[b] requires that all works based
+ * on this software must also be made publicly available under the terms of
+ * the GPL2 ("Copyleft").
+ *
+ * Contact information
+ * -------------------
+ *
+ * GENERAL BYTES s.r.o.
+ * Web      :  http://www.generalbytes.com
+ *
+ ************************************************************************************/
+
+package com.generalbytes.batm.server.extensions.test;
+
+import com.generalbytes.batm.server.extensions.extra.bitcoin.exchanges.OrderBookSnapshot;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares price calculation on {@link OrderBookSnapshot} with the former implementation that
+ * sorted and walked the order book with BigDecimal on every request.
+ *
+ * Run from server_extensions_test after build:
+ * java -cp "dist/*:libs/*:../server_extensions_extra/dist/*:../server_extensions_extra/libs/*:../server_extensions_api/dist/*" com.generalbytes.batm.server.extensions.test.OrderBookSnapshotBenchmark [levels] [iterations]
+ */
+public class OrderBookSnapshotBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int levels = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        OrderBook orderBook = createOrderBook(levels, new Random(42));
+        BigDecimal[] amounts = {new BigDecimal("0.01"), BigDecimal.ONE, BigDecimal.TEN, new BigDecimal("250")};
+        OrderBookSnapshot snapshot = OrderBookSnapshot.create(orderBook);
+
+        for (BigDecimal amount : amounts) {
+            BigDecimal legacy = legacyBuyPrice(orderBook, amount);
+            BigDecimal current = snapshot.getBuyPrice(amount);
+            System.out.println("amount " + amount + ": legacy = " + legacy + ", snapshot = " + current);
+        }
+
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            boolean measured = round == WARMUP_ROUNDS;
+            long legacyTime = timeLegacy(orderBook, amounts, iterations);
+            long createTime = timeCreate(orderBook, iterations);
+            long lookupTime = timeLookup(snapshot, amounts, iterations * 100);
+            if (measured) {
+                System.out.println("levels = " + levels);
+                System.out.println("legacy sort + walk:    " + legacyTime / (iterations * amounts.length) + " ns/op");
+                System.out.println("snapshot creation:     " + createTime / iterations + " ns/op");
+                System.out.println("snapshot lookup:       " + lookupTime / (iterations * 100L * amounts.length) + " ns/op");
+            }
+        }
+    }
+
+    private static long timeLegacy(OrderBook orderBook, BigDecimal[] amounts, int iterations) {
+        long start = System.nanoTime();
+        int nulls = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (BigDecimal amount : amounts) {
+                if (legacyBuyPrice(orderBook, amount) == null) {
+                    nulls++;
+                }
+            }
+        }
+        long time = System.nanoTime() - start;
+        consume(nulls);
+        return time;
+    }
+
+    private static long timeCreate(OrderBook orderBook, int iterations) {
+        long start = System.nanoTime();
+        int count = 0;
+        for (int i = 0; i < iterations; i++) {
+            count += OrderBookSnapshot.create(orderBook).getAskCount();
+        }
+        long time = System.nanoTime() - start;
+        consume(count);
+        return time;
+    }
+
+    private static long timeLookup(OrderBookSnapshot snapshot, BigDecimal[] amounts, int iterations) {
+        long start = System.nanoTime();
+        int nulls = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (BigDecimal amount : amounts) {
+                if (snapshot.getBuyPrice(amount) == null) {
+                    nulls++;
+                }
+            }
+        }
+        long time = System.nanoTime() - start;
+        consume(nulls);
+        return time;
+    }
+
+    /**
+     * Copy of the calculation XChangeExchange used to do for every price request.
+     */
+    private static BigDecimal legacyBuyPrice(OrderBook orderBook, BigDecimal cryptoAmount) {
+        List<LimitOrder> asks = new ArrayList<LimitOrder>(orderBook.getAsks());
+        Collections.sort(asks, new Comparator<LimitOrder>() {
+            @Override
+            public int compare(LimitOrder lhs, LimitOrder rhs) {
+                return lhs.getLimitPrice().compareTo(rhs.getLimitPrice());
+            }
+        });
+        BigDecimal asksTotal = BigDecimal.ZERO;
+        for (LimitOrder ask : asks) {
+            asksTotal = asksTotal.add(ask.getTradableAmount());
+            if (cryptoAmount.compareTo(asksTotal) <= 0) {
+                return ask.getLimitPrice().multiply(cryptoAmount);
+            }
+        }
+        return null;
+    }
+
+    private static OrderBook createOrderBook(int levels, Random random) {
+        List<LimitOrder> asks = new ArrayList<LimitOrder>(levels);
+        List<LimitOrder> bids = new ArrayList<LimitOrder>(levels);
+        double ask = 600;
+        double bid = 599.99;
+        for (int i = 0; i < levels; i++) {
+            ask += random.nextDouble() * 0.05;
+            bid -= random.nextDouble() * 0.05;
+            asks.add(level(Order.OrderType.ASK, ask, random));
+            bids.add(level(Order.OrderType.BID, bid, random));
+        }
+        return new OrderBook(new Date(), asks, bids);
+    }
+
+    private static LimitOrder level(Order.OrderType type, double price, Random random) {
+        BigDecimal amount = BigDecimal.valueOf(random.nextInt(100000000) + 1, 8);
+        return new LimitOrder(type, amount, CurrencyPair.BTC_USD, null, null, BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP));
+    }
+
+    private static volatile int sink;
+
+    private static void consume(int value) {
+        sink += value;
+    }
+}